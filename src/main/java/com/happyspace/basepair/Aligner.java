@@ -0,0 +1,377 @@
+package com.happyspace.basepair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes pairwise alignment scores of a query sequence against a window of a target sequence,
+ * globally (Needleman-Wunsch) or locally (Smith-Waterman), with affine gap penalties (Gotoh)
+ * and optionally restricted to a band around the diagonal.
+ *
+ * Operands are read straight from their packed integers. The scores of the query against each
+ * possible target base pair are laid out once as a query profile, so the inner loop runs down a
+ * column reading only primitive arrays. Score columns and the profile are reused per thread.
+ */
+public class Aligner {
+
+    /**
+     * Band width that lets alignments use every cell.
+     */
+    public static final int UNBANDED = Integer.MAX_VALUE;
+
+    /**
+     * Score of cells that may not be used, low enough not to win and high enough not to overflow.
+     */
+    private static final int UNREACHABLE = Integer.MIN_VALUE / 2;
+
+    /**
+     * Columns and profile of the thread, grown as longer queries arrive.
+     */
+    private static final ThreadLocal<Workspace> WORKSPACE = new ThreadLocal<Workspace>() {
+        @Override
+        protected Workspace initialValue() {
+            return new Workspace();
+        }
+    };
+
+    /**
+     * Scores of aligned base pairs.
+     */
+    private final ScoringMatrix matrix;
+    /**
+     * Penalty of the first base pair of a gap.
+     */
+    private final int gapOpen;
+    /**
+     * Penalty of every further base pair of a gap.
+     */
+    private final int gapExtend;
+    /**
+     * Largest distance of a cell from the diagonal.
+     */
+    private final int band;
+    /**
+     * The pool batches run on.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Create an unbanded aligner running batches on the pool shared by this package.
+     *
+     * @param matrix scores of aligned base pairs.
+     * @param gapOpen penalty of the first base pair of a gap.
+     * @param gapExtend penalty of every further base pair of a gap.
+     */
+    public Aligner(final ScoringMatrix matrix, final int gapOpen, final int gapExtend) {
+        this(matrix, gapOpen, gapExtend, UNBANDED, Util.sharedPool());
+    }
+
+    /**
+     * Create an aligner.
+     *
+     * @param matrix scores of aligned base pairs.
+     * @param gapOpen penalty of the first base pair of a gap.
+     * @param gapExtend penalty of every further base pair of a gap.
+     * @param band largest distance of a cell from the diagonal, or UNBANDED.
+     * @param pool the pool batches run on.
+     */
+    public Aligner(final ScoringMatrix matrix, final int gapOpen, final int gapExtend, final int band,
+                   final ForkJoinPool pool) {
+        if (gapOpen < 0 || gapExtend < 0) {
+            throw new IllegalArgumentException("Gap penalties may not be negative.");
+        }
+        if (band < 0) {
+            throw new IllegalArgumentException("Band may not be negative.");
+        }
+        this.matrix = matrix;
+        this.gapOpen = gapOpen;
+        this.gapExtend = gapExtend;
+        this.band = band;
+        this.pool = pool;
+    }
+
+    /**
+     * Align a query against a whole target.
+     *
+     * @param mode global or local alignment.
+     * @param query the query.
+     * @param target the target.
+     * @return the alignment.
+     */
+    public final Alignment align(final AlignmentMode mode, final PackedSequence query, final PackedSequence target) {
+        return align(mode, query, target, 0, target.getLength());
+    }
+
+    /**
+     * Align a query against a window of a target. The band is measured from the diagonal starting
+     * at the beginning of the query and of the window.
+     *
+     * @param mode global or local alignment.
+     * @param query the query.
+     * @param target the target.
+     * @param from first position of the target window.
+     * @param to end of the target window, exclusive.
+     * @return the alignment, with its target end a position in the target.
+     */
+    public final Alignment align(final AlignmentMode mode, final PackedSequence query, final PackedSequence target,
+                                 final int from, final int to) {
+        if (from < 0 || to > target.getLength() || from > to) {
+            throw new IndexOutOfBoundsException("Window does not fall within the target.");
+        }
+        int m = query.getLength();
+        int n = to - from;
+        boolean local = mode == AlignmentMode.LOCAL;
+        if (!local && Math.abs(m - n) > band) {
+            throw new IllegalArgumentException("The end of a global alignment falls outside the band.");
+        }
+        Workspace workspace = WORKSPACE.get();
+        workspace.prepare(query, matrix);
+        int[] h = workspace.scores;
+        int[] e = workspace.gaps;
+        int[][] profile = workspace.profile;
+        int open = gapOpen + gapExtend;
+
+        // column zero: the query against an empty window
+        int rows = band == UNBANDED ? m : (int) Math.min(m, (long) band);
+        h[0] = 0;
+        for (int i = 1; i <= rows; i++) {
+            h[i] = local ? 0 : -open - (i - 1) * gapExtend;
+            e[i] = UNREACHABLE;
+        }
+        if (rows < m) {
+            h[rows + 1] = UNREACHABLE;
+            e[rows + 1] = UNREACHABLE;
+        }
+
+        int best = 0;
+        int bestRow = 0;
+        int bestColumn = 0;
+        int word = 0;
+        for (int j = 1; j <= n; j++) {
+            int position = from + j - 1;
+            if (j == 1 || (position & (Layout.size() - 1)) == 0) {
+                word = target.word(position / Layout.size());
+            }
+            int[] column = profile[(word >>> ((position & (Layout.size() - 1)) * 4)) & Layout.MASK];
+            int lo = 1;
+            int hi = m;
+            if (band != UNBANDED) {
+                lo = (int) Math.max(1, (long) j - band);
+                hi = (int) Math.min(m, (long) j + band);
+                if (lo > hi && lo > 1) {
+                    continue;
+                }
+            }
+            // the cell above the first row of the column: the top row while it lies in the band
+            int up;
+            if (lo == 1 && j <= band) {
+                up = local ? 0 : -open - (j - 1) * gapExtend;
+            }
+            else {
+                up = UNREACHABLE;
+            }
+            int diagonal = h[lo - 1];
+            h[lo - 1] = up;
+            int f = UNREACHABLE;
+            for (int i = lo; i <= hi; i++) {
+                int left = h[i];
+                int gapLeft = Math.max(e[i] - gapExtend, left - open);
+                int gapUp = Math.max(f - gapExtend, up - open);
+                int score = Math.max(diagonal + column[i], Math.max(gapLeft, gapUp));
+                if (local) {
+                    if (score < 0) {
+                        score = 0;
+                    }
+                    else if (score > best) {
+                        best = score;
+                        bestRow = i;
+                        bestColumn = j;
+                    }
+                }
+                diagonal = left;
+                h[i] = score;
+                e[i] = gapLeft;
+                f = gapUp;
+                up = score;
+            }
+            if (hi < m) {
+                h[hi + 1] = UNREACHABLE;
+                e[hi + 1] = UNREACHABLE;
+            }
+        }
+        if (local) {
+            return new Alignment(best, bestRow, from + bestColumn);
+        }
+        return new Alignment(h[m], m, to);
+    }
+
+    /**
+     * Align every query against a window of a target on the pool.
+     *
+     * @param mode global or local alignment.
+     * @param queries the queries.
+     * @param target the target.
+     * @param from first position of the target window.
+     * @param to end of the target window, exclusive.
+     * @return the alignments in the order of the queries.
+     */
+    public final List<Alignment> alignAll(final AlignmentMode mode, final List<? extends PackedSequence> queries,
+                                          final PackedSequence target, final int from, final int to) {
+        PackedSequence[] array = queries.toArray(new PackedSequence[queries.size()]);
+        Alignment[] alignments = new Alignment[array.length];
+        if (array.length > 0) {
+            pool.invoke(new BatchTask(mode, array, target, from, to, alignments, 0, array.length));
+        }
+        return new ArrayList<>(Arrays.asList(alignments));
+    }
+
+    /**
+     * Return the number of cells an alignment of a query against a window fills,
+     * to measure throughput in cell updates.
+     *
+     * @param queryLength length of the query.
+     * @param windowLength length of the target window.
+     * @return the number of cells.
+     */
+    public final long cells(final int queryLength, final int windowLength) {
+        if (band == UNBANDED) {
+            return (long) queryLength * windowLength;
+        }
+        long cells = 0;
+        for (long j = 1; j <= windowLength; j++) {
+            long lo = Math.max(1, j - band);
+            long hi = Math.min(queryLength, j + band);
+            cells += Math.max(0, hi - lo + 1);
+        }
+        return cells;
+    }
+
+    /**
+     * Score columns and query profile owned by one thread.
+     */
+    private static final class Workspace {
+
+        /**
+         * Best score of each row of the current column.
+         */
+        private int[] scores = new int[0];
+        /**
+         * Best score of each row of the current column ending in a gap in the query.
+         */
+        private int[] gaps = new int[0];
+        /**
+         * Score of every possible target encoding against each row of the query, rows from one.
+         */
+        private final int[][] profile = new int[ScoringMatrix.ENCODINGS][0];
+
+        /**
+         * Size the arrays for a query and fill in its profile.
+         *
+         * @param query the query.
+         * @param matrix scores of aligned base pairs.
+         */
+        void prepare(final PackedSequence query, final ScoringMatrix matrix) {
+            int rows = query.getLength() + 2;
+            if (scores.length < rows) {
+                scores = new int[rows];
+                gaps = new int[rows];
+                for (int s = 0; s < profile.length; s++) {
+                    profile[s] = new int[rows];
+                }
+            }
+            int words = query.wordCount();
+            for (int k = 0; k < words; k++) {
+                int packed = query.word(k);
+                int end = Math.min(Layout.size(), query.getLength() - k * Layout.size());
+                for (int p = 0; p < end; p++) {
+                    int encoding = (packed >>> (p * 4)) & Layout.MASK;
+                    int row = k * Layout.size() + p + 1;
+                    for (int s = 0; s < profile.length; s++) {
+                        profile[s][row] = matrix.score(encoding, s);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Aligns a range of queries, splitting the range until one query is left.
+     */
+    private final class BatchTask extends RecursiveAction {
+
+        /**
+         * Serialization version.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Global or local alignment.
+         */
+        private final AlignmentMode mode;
+        /**
+         * The queries.
+         */
+        private final PackedSequence[] queries;
+        /**
+         * The target.
+         */
+        private final PackedSequence target;
+        /**
+         * First position of the target window.
+         */
+        private final int windowFrom;
+        /**
+         * End of the target window, exclusive.
+         */
+        private final int windowTo;
+        /**
+         * The alignments, in the order of the queries.
+         */
+        private final Alignment[] alignments;
+        /**
+         * First query of the range.
+         */
+        private final int from;
+        /**
+         * End of the range, exclusive.
+         */
+        private final int to;
+
+        /**
+         * @param mode global or local alignment
+         * @param queries the queries
+         * @param target the target
+         * @param windowFrom first position of the target window
+         * @param windowTo end of the target window, exclusive
+         * @param alignments the alignments, in the order of the queries
+         * @param from first query of the range
+         * @param to end of the range, exclusive
+         */
+        BatchTask(final AlignmentMode mode, final PackedSequence[] queries, final PackedSequence target,
+                  final int windowFrom, final int windowTo, final Alignment[] alignments, final int from,
+                  final int to) {
+            this.mode = mode;
+            this.queries = queries;
+            this.target = target;
+            this.windowFrom = windowFrom;
+            this.windowTo = windowTo;
+            this.alignments = alignments;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new BatchTask(mode, queries, target, windowFrom, windowTo, alignments, from, middle),
+                        new BatchTask(mode, queries, target, windowFrom, windowTo, alignments, middle, to));
+                return;
+            }
+            alignments[from] = align(mode, queries[from], target, windowFrom, windowTo);
+        }
+    }
+}
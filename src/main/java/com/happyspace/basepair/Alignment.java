@@ -0,0 +1,57 @@
+package com.happyspace.basepair;
+
+/**
+ * The result of a pairwise alignment: its score and where it ends in the query and the target.
+ */
+public final class Alignment {
+
+    /**
+     * The alignment score.
+     */
+    private final int score;
+    /**
+     * End of the alignment in the query, exclusive.
+     */
+    private final int queryEnd;
+    /**
+     * End of the alignment in the target, exclusive.
+     */
+    private final int targetEnd;
+
+    /**
+     * @param score the alignment score
+     * @param queryEnd end of the alignment in the query, exclusive
+     * @param targetEnd end of the alignment in the target, exclusive
+     */
+    public Alignment(final int score, final int queryEnd, final int targetEnd) {
+        this.score = score;
+        this.queryEnd = queryEnd;
+        this.targetEnd = targetEnd;
+    }
+
+    /**
+     * @return the alignment score.
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * @return end of the alignment in the query, exclusive.
+     */
+    public int getQueryEnd() {
+        return queryEnd;
+    }
+
+    /**
+     * @return end of the alignment in the target, exclusive.
+     */
+    public int getTargetEnd() {
+        return targetEnd;
+    }
+
+    @Override
+    public String toString() {
+        return "Alignment[score=" + score + ", queryEnd=" + queryEnd + ", targetEnd=" + targetEnd + "]";
+    }
+}
@@ -0,0 +1,15 @@
+package com.happyspace.basepair;
+
+/**
+ * Enumeration of the kinds of pairwise alignment computed by Aligner.
+ */
+public enum AlignmentMode {
+    /**
+     * Needleman-Wunsch: the whole query is aligned against the whole target window.
+     */
+    GLOBAL,
+    /**
+     * Smith-Waterman: the best scoring region of the query is aligned against a region of the target window.
+     */
+    LOCAL
+}
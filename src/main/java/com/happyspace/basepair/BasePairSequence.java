@@ -0,0 +1,30 @@
+package com.happyspace.basepair;
+
+/**
+ * A sequence of base pairs that can be read by position.
+ */
+public interface BasePairSequence {
+
+    /**
+     * Get the base pair found at a given position within the base pair sequence.
+     *
+     * @param position A zero based index into a sequence of base pairs.
+     * @return The base pair found at the position.
+     */
+    BasePair get(int position);
+
+    /**
+     * Return the number of base pairs in the sequence.
+     *
+     * @return number of base pairs.
+     */
+    int getLength();
+
+    /**
+     * Return the number of bytes of heap retained by the sequence on the running JVM,
+     * object headers, arrays and alignment padding included.
+     *
+     * @return retained bytes.
+     */
+    long retainedBytes();
+}
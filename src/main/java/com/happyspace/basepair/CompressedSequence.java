@@ -0,0 +1,462 @@
+package com.happyspace.basepair;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compressed, read only representation of a sequence of base pairs.
+ *
+ * The packed integers of a sequence are split into fixed size blocks and each block is stored
+ * with whichever of three encodings is smallest: raw packed integers, runs of fields, or rANS
+ * entropy coding of the fields. An index of block offsets gives random access, and a small
+ * least recently used cache of decoded blocks keeps repeated reads of a region fast.
+ *
+ * Encoded blocks are held in chunks of whole blocks, a page of Sequence in size unless a single
+ * block is larger, so that no array is large enough to be allocated as a humongous object by G1.
+ */
+public final class CompressedSequence implements BasePairSequence {
+
+    /**
+     * Default number of packed integers per block, 8192 base pairs.
+     */
+    public static final int DEFAULT_BLOCK_WORDS = 1024;
+    /**
+     * Default number of decoded blocks kept in the cache.
+     */
+    public static final int DEFAULT_CACHE_BLOCKS = 8;
+
+    /**
+     * Block stored as raw packed integers.
+     */
+    static final int RAW = 0;
+    /**
+     * Block stored as runs: a field followed by the run length as a variable length integer.
+     */
+    static final int RUN_LENGTH = 1;
+    /**
+     * Block stored as a rANS stream of fields.
+     */
+    static final int ENTROPY = 2;
+
+    /**
+     * The number of base pairs.
+     */
+    private final int length;
+    /**
+     * The number of packed integers of the uncompressed sequence.
+     */
+    private final int words;
+    /**
+     * The number of packed integers per block.
+     */
+    private final int blockWords;
+    /**
+     * Chunks of encoded blocks, each block starting with its encoding.
+     */
+    private final byte[][] chunks;
+    /**
+     * Number of bytes a chunk may hold.
+     */
+    private final int chunkBytes;
+    /**
+     * Offset of each block, counting chunkBytes for every chunk before its own.
+     */
+    private final long[] blockOffsets;
+    /**
+     * Block held by each cache entry, -1 when empty. Guarded by this.
+     */
+    private final int[] cachedBlocks;
+    /**
+     * Decoded packed integers of each cache entry. Guarded by this.
+     */
+    private final int[][] cachedWords;
+    /**
+     * Clock value of the last use of each cache entry. Guarded by this.
+     */
+    private final long[] cachedUse;
+    /**
+     * Clock advanced on every cache access. Guarded by this.
+     */
+    private long clock;
+    /**
+     * The block read last, checked before the cache without locking.
+     */
+    private volatile Block recent;
+
+    /**
+     * Compress a sequence with default block and cache sizes.
+     *
+     * @param sequence the sequence to compress.
+     */
+    public CompressedSequence(final PackedSequence sequence) {
+        this(sequence, DEFAULT_BLOCK_WORDS, DEFAULT_CACHE_BLOCKS);
+    }
+
+    /**
+     * Compress a sequence.
+     *
+     * @param sequence the sequence to compress.
+     * @param blockWords number of packed integers per block.
+     * @param cacheBlocks number of decoded blocks kept in the cache.
+     */
+    public CompressedSequence(final PackedSequence sequence, final int blockWords, final int cacheBlocks) {
+        if (blockWords <= 0 || cacheBlocks <= 0) {
+            throw new IllegalArgumentException("Block and cache sizes must be positive.");
+        }
+        this.length = sequence.getLength();
+        this.words = sequence.wordCount();
+        this.blockWords = blockWords;
+
+        int blocks = (words + blockWords - 1) / blockWords;
+        // an encoded block is never larger than its raw packed integers and its encoding
+        chunkBytes = Math.max(Sequence.PAGE_BYTES, Math.min(blockWords, words) * 4 + 1);
+        blockOffsets = new long[blocks];
+        List<byte[]> filled = new ArrayList<>();
+        ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+        byte[] symbols = new byte[blockWords * Layout.size()];
+        for (int b = 0; b < blocks; b++) {
+            int first = b * blockWords;
+            int count = Math.min(blockWords, words - first);
+            for (int w = 0; w < count; w++) {
+                int packed = sequence.word(first + w);
+                for (Layout layout : Layout.values()) {
+                    symbols[w * Layout.size() + layout.ordinal()] =
+                            (byte) ((packed >>> layout.getOffset()) & Layout.MASK);
+                }
+            }
+            byte[] encoded = encodeBlock(sequence, first, count, symbols);
+            if (chunk.size() + encoded.length > chunkBytes) {
+                filled.add(chunk.toByteArray());
+                chunk.reset();
+            }
+            blockOffsets[b] = (long) filled.size() * chunkBytes + chunk.size();
+            chunk.write(encoded, 0, encoded.length);
+        }
+        if (chunk.size() > 0) {
+            filled.add(chunk.toByteArray());
+        }
+        chunks = filled.toArray(new byte[filled.size()][]);
+
+        cachedBlocks = new int[cacheBlocks];
+        cachedWords = new int[cacheBlocks][];
+        cachedUse = new long[cacheBlocks];
+        for (int i = 0; i < cacheBlocks; i++) {
+            cachedBlocks[i] = -1;
+        }
+    }
+
+    /**
+     * Get the base pair found at a given position within the base pair sequence.
+     *
+     * @param position A zero based index into a sequence of base pairs.
+     * @return The base pair found at the position.
+     */
+    @Override
+    public BasePair get(final int position) {
+        if (position < 0 || position >= length) {
+            throw new IndexOutOfBoundsException("Position does not fall within the sequence.");
+        }
+        int word = position / Layout.size();
+        int[] block = block(word / blockWords);
+        return Util.getBasePair(block[word % blockWords], Layout.getPosition(position % Layout.size()));
+    }
+
+    @Override
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Return the bytes retained: this object, the chunks of encoded blocks, the block index and the cache.
+     *
+     * @return retained bytes.
+     */
+    @Override
+    public synchronized long retainedBytes() {
+        // four ints, a long and six references
+        long bytes = Footprint.object(4 * 4 + 8 + 6 * Footprint.REFERENCE)
+                + Footprint.referenceArray(chunks.length)
+                + Footprint.longArray(blockOffsets.length)
+                + Footprint.intArray(cachedBlocks.length)
+                + Footprint.referenceArray(cachedWords.length)
+                + Footprint.longArray(cachedUse.length);
+        Block last = recent;
+        boolean lastCached = false;
+        for (int[] cached : cachedWords) {
+            if (cached != null) {
+                bytes += Footprint.intArray(cached.length);
+                lastCached |= last != null && cached == last.words;
+            }
+        }
+        if (last != null) {
+            bytes += Footprint.object(4 + Footprint.REFERENCE);
+            if (!lastCached) {
+                bytes += Footprint.intArray(last.words.length);
+            }
+        }
+        for (byte[] chunk : chunks) {
+            bytes += Footprint.byteArray(chunk.length);
+        }
+        return bytes;
+    }
+
+    /**
+     * Return the number of bytes of encoded blocks.
+     *
+     * @return encoded size.
+     */
+    public int getCompressedBytes() {
+        int bytes = 0;
+        for (byte[] chunk : chunks) {
+            bytes += chunk.length;
+        }
+        return bytes;
+    }
+
+    /**
+     * Decompress the whole sequence.
+     *
+     * @return the uncompressed sequence.
+     */
+    public Sequence toSequence() {
+        int[][] pages = Sequence.allocate(words);
+        for (int b = 0; b < blockOffsets.length; b++) {
+            int[] block = decodeBlock(b);
+            Sequence.putWords(pages, b * blockWords, block, 0, block.length);
+        }
+        return new Sequence(pages, length);
+    }
+
+    /**
+     * Return the decoded packed integers of a block, from the most recent block, the cache
+     * or by decoding it.
+     *
+     * @param b the block.
+     * @return packed integers of the block.
+     */
+    private int[] block(final int b) {
+        Block last = recent;
+        if (last != null && last.index == b) {
+            return last.words;
+        }
+        int[] block = lookup(b);
+        if (block == null) {
+            block = decodeBlock(b);
+            store(b, block);
+        }
+        recent = new Block(b, block);
+        return block;
+    }
+
+    /**
+     * Find a block in the cache.
+     *
+     * @param b the block.
+     * @return packed integers of the block, or null if not cached.
+     */
+    private synchronized int[] lookup(final int b) {
+        for (int i = 0; i < cachedBlocks.length; i++) {
+            if (cachedBlocks[i] == b) {
+                cachedUse[i] = ++clock;
+                return cachedWords[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Put a block in the cache, evicting the least recently used entry.
+     *
+     * @param b the block.
+     * @param block packed integers of the block.
+     */
+    private synchronized void store(final int b, final int[] block) {
+        int victim = 0;
+        for (int i = 0; i < cachedBlocks.length; i++) {
+            if (cachedBlocks[i] == b) {
+                return;
+            }
+            if (cachedUse[i] < cachedUse[victim]) {
+                victim = i;
+            }
+        }
+        cachedBlocks[victim] = b;
+        cachedWords[victim] = block;
+        cachedUse[victim] = ++clock;
+    }
+
+    /**
+     * Encode a block with the smallest of the three encodings.
+     *
+     * @param sequence the sequence being compressed.
+     * @param first index of the first packed integer of the block.
+     * @param count number of packed integers in the block.
+     * @param symbols fields of the block in position order.
+     * @return the encoded block.
+     */
+    private static byte[] encodeBlock(final PackedSequence sequence, final int first, final int count,
+                                      final byte[] symbols) {
+        int fields = count * Layout.size();
+        byte[] runs = encodeRuns(symbols, fields);
+        byte[] entropy = null;
+        if (inAlphabet(symbols, fields)) {
+            entropy = Rans.encode(symbols, fields);
+        }
+        int raw = count * 4;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1 + raw);
+        if (raw <= runs.length && (entropy == null || raw <= entropy.length)) {
+            out.write(RAW);
+            for (int w = 0; w < count; w++) {
+                int packed = sequence.word(first + w);
+                out.write(packed >>> 24);
+                out.write(packed >>> 16);
+                out.write(packed >>> 8);
+                out.write(packed);
+            }
+        }
+        else if (entropy == null || runs.length <= entropy.length) {
+            out.write(RUN_LENGTH);
+            out.write(runs, 0, runs.length);
+        }
+        else {
+            out.write(ENTROPY);
+            out.write(entropy, 0, entropy.length);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Return whether fields hold only padding and base pair encodings, the alphabet of the entropy coder.
+     *
+     * @param symbols fields in position order.
+     * @param count number of fields.
+     * @return true if every field is in the alphabet.
+     */
+    private static boolean inAlphabet(final byte[] symbols, final int count) {
+        for (int i = 0; i < count; i++) {
+            if (symbols[i] >= Rans.SYMBOLS) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decode a block.
+     *
+     * @param b the block.
+     * @return packed integers of the block.
+     */
+    private int[] decodeBlock(final int b) {
+        int count = Math.min(blockWords, words - b * blockWords);
+        int[] block = new int[count];
+        byte[] data = chunks[(int) (blockOffsets[b] / chunkBytes)];
+        int from = (int) (blockOffsets[b] % chunkBytes) + 1;
+        int method = data[from - 1];
+        if (method == RAW) {
+            for (int w = 0; w < count; w++) {
+                int p = from + 4 * w;
+                block[w] = ((data[p] & 0xFF) << 24) | ((data[p + 1] & 0xFF) << 16)
+                        | ((data[p + 2] & 0xFF) << 8) | (data[p + 3] & 0xFF);
+            }
+            return block;
+        }
+
+        int fields = count * Layout.size();
+        byte[] symbols = new byte[fields];
+        if (method == RUN_LENGTH) {
+            decodeRuns(data, from, symbols, fields);
+        }
+        else {
+            Rans.decode(data, from, symbols, fields);
+        }
+        for (int w = 0; w < count; w++) {
+            int packed = 0;
+            for (Layout layout : Layout.values()) {
+                packed |= symbols[w * Layout.size() + layout.ordinal()] << layout.getOffset();
+            }
+            block[w] = packed;
+        }
+        return block;
+    }
+
+    /**
+     * Encode fields as runs of equal fields.
+     *
+     * @param symbols fields in position order.
+     * @param count number of fields.
+     * @return the encoded runs.
+     */
+    private static byte[] encodeRuns(final byte[] symbols, final int count) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int i = 0;
+        while (i < count) {
+            int run = 1;
+            while (i + run < count && symbols[i + run] == symbols[i]) {
+                run++;
+            }
+            out.write(symbols[i]);
+            // variable length integer, seven bits per byte, high bit set on all but the last byte
+            int remaining = run;
+            while (remaining >= 0x80) {
+                out.write((remaining & 0x7F) | 0x80);
+                remaining >>>= 7;
+            }
+            out.write(remaining);
+            i += run;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decode runs of equal fields.
+     *
+     * @param encoded array holding the runs.
+     * @param from offset of the runs within the array.
+     * @param symbols destination of the fields.
+     * @param count number of fields.
+     */
+    private static void decodeRuns(final byte[] encoded, final int from, final byte[] symbols, final int count) {
+        int p = from;
+        int i = 0;
+        while (i < count) {
+            byte symbol = encoded[p++];
+            int run = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = encoded[p++] & 0xFF;
+                run |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            for (int end = i + run; i < end; i++) {
+                symbols[i] = symbol;
+            }
+        }
+    }
+
+    /**
+     * A decoded block.
+     */
+    private static final class Block {
+
+        /**
+         * The block.
+         */
+        private final int index;
+        /**
+         * Packed integers of the block.
+         */
+        private final int[] words;
+
+        /**
+         * @param index the block
+         * @param words packed integers of the block
+         */
+        Block(final int index, final int[] words) {
+            this.index = index;
+            this.words = words;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.happyspace.basepair;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A mutable sequence of base pairs that many threads may read and update at once.
+ *
+ * Base pairs are packed eight per integer as in Sequence. An update replaces one field with a
+ * compare and set loop on the containing integer, so threads updating different fields of the
+ * same integer never lose each other's writes, and no lock is taken. As in Sequence, the
+ * integers are held in pages of PAGE_WORDS, so no array is allocated as a humongous object by G1.
+ */
+public final class ConcurrentSequence implements BasePairSequence {
+
+    /**
+     * Pages of integers encoding a sequence of base pairs. Every page is full except the last.
+     */
+    private final AtomicIntegerArray[] pages;
+
+    /**
+     * The number of base pairs.
+     */
+    private final int length;
+
+    /**
+     * Create a mutable copy of a sequence.
+     *
+     * @param sequence the sequence to copy.
+     */
+    public ConcurrentSequence(final Sequence sequence) {
+        this.pages = allocate(sequence.wordCount());
+        for (int p = 0; p < pages.length; p++) {
+            AtomicIntegerArray page = pages[p];
+            for (int i = 0; i < page.length(); i++) {
+                page.lazySet(i, sequence.word((p << Sequence.PAGE_SHIFT) + i));
+            }
+        }
+        this.length = sequence.getLength();
+    }
+
+    /**
+     * Create a sequence of a number of base pairs, all padding until set.
+     *
+     * @param length the number of base pairs.
+     */
+    public ConcurrentSequence(final int length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("Length may not be negative.");
+        }
+        this.pages = allocate(Sequence.wordsFor(length));
+        this.length = length;
+    }
+
+    /**
+     * Get the base pair found at a given position within the base pair sequence.
+     *
+     * @param position A zero based index into a sequence of base pairs.
+     * @return The base pair found at the position, null for padding.
+     */
+    @Override
+    public BasePair get(final int position) {
+        checkPosition(position);
+        int index = position / Layout.size();
+        int se = pages[index >>> Sequence.PAGE_SHIFT].get(index & Sequence.PAGE_MASK);
+        return Util.getBasePair(se, Layout.getPosition(position % Layout.size()));
+    }
+
+    /**
+     * Set the base pair at a position.
+     *
+     * @param position A zero based index into a sequence of base pairs.
+     * @param basePair the base pair, BasePair.__ or null for padding.
+     */
+    public void set(final int position, final BasePair basePair) {
+        checkPosition(position);
+        int index = position / Layout.size();
+        int shift = Layout.getPosition(position % Layout.size()).getOffset();
+        int field = encoding(basePair) << shift;
+        int mask = Layout.MASK << shift;
+        AtomicIntegerArray page = pages[index >>> Sequence.PAGE_SHIFT];
+        int slot = index & Sequence.PAGE_MASK;
+        while (true) {
+            int current = page.get(slot);
+            int update = (current & ~mask) | field;
+            if (current == update || page.compareAndSet(slot, current, update)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Set the base pair at a position if it currently holds the expected base pair.
+     * Changes to other positions of the same packed integer do not make the update fail.
+     *
+     * @param position A zero based index into a sequence of base pairs.
+     * @param expected the expected base pair, BasePair.__ or null for padding.
+     * @param basePair the new base pair, BasePair.__ or null for padding.
+     * @return true if the base pair was set.
+     */
+    public boolean compareAndSet(final int position, final BasePair expected, final BasePair basePair) {
+        checkPosition(position);
+        int index = position / Layout.size();
+        int shift = Layout.getPosition(position % Layout.size()).getOffset();
+        int expectedField = encoding(expected) << shift;
+        int field = encoding(basePair) << shift;
+        int mask = Layout.MASK << shift;
+        AtomicIntegerArray page = pages[index >>> Sequence.PAGE_SHIFT];
+        int slot = index & Sequence.PAGE_MASK;
+        while (true) {
+            int current = page.get(slot);
+            if ((current & mask) != expectedField) {
+                return false;
+            }
+            int update = (current & ~mask) | field;
+            if (current == update || page.compareAndSet(slot, current, update)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Copy the sequence into an immutable sequence. Each packed integer is read atomically,
+     * but updates made during the copy may be seen for some integers and not others.
+     *
+     * @return an immutable copy.
+     */
+    public Sequence snapshot() {
+        int[][] copy = new int[pages.length][];
+        for (int p = 0; p < pages.length; p++) {
+            AtomicIntegerArray page = pages[p];
+            copy[p] = new int[page.length()];
+            for (int i = 0; i < copy[p].length; i++) {
+                copy[p][i] = page.get(i);
+            }
+        }
+        return new Sequence(copy, length);
+    }
+
+    @Override
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Return the bytes retained: this object, the page table and each page with its atomic array wrapper.
+     *
+     * @return retained bytes.
+     */
+    @Override
+    public long retainedBytes() {
+        long bytes = Footprint.object(Footprint.REFERENCE + 4) + Footprint.referenceArray(pages.length);
+        for (AtomicIntegerArray page : pages) {
+            bytes += Footprint.object(Footprint.REFERENCE) + Footprint.intArray(page.length());
+        }
+        return bytes;
+    }
+
+    /**
+     * @param position a position to check.
+     */
+    private void checkPosition(final int position) {
+        if (position < 0 || position >= length) {
+            throw new IndexOutOfBoundsException("Position does not fall within the sequence.");
+        }
+    }
+
+    /**
+     * Allocate pages for a number of packed integers, laid out as Sequence.allocate lays them out.
+     *
+     * @param words number of packed integers.
+     * @return the pages.
+     */
+    private static AtomicIntegerArray[] allocate(final int words) {
+        int count = (words + Sequence.PAGE_WORDS - 1) >>> Sequence.PAGE_SHIFT;
+        AtomicIntegerArray[] allocated = new AtomicIntegerArray[count];
+        for (int p = 0; p < count; p++) {
+            allocated[p] = new AtomicIntegerArray(Math.min(Sequence.PAGE_WORDS, words - (p << Sequence.PAGE_SHIFT)));
+        }
+        return allocated;
+    }
+
+    /**
+     * @param basePair a base pair, or null for padding.
+     * @return the encoding of the base pair.
+     */
+    private static int encoding(final BasePair basePair) {
+        return basePair == null ? BasePair.PADDING_ENCODING : basePair.getEncoding();
+    }
+}
@@ -0,0 +1,252 @@
+package com.happyspace.basepair;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes the mismatch distance, the number of positions holding different base pairs,
+ * between every two sequences of a collection of equal length sequences.
+ *
+ * The upper triangle of the matrix is split into square tiles of rows and columns small
+ * enough for the packed integers of both to stay in cache, and tiles run on a fork join pool.
+ * Distances are computed a packed integer at a time without allocation.
+ */
+public class DistanceEngine {
+
+    /**
+     * Bytes of packed integers a tile aims to keep in cache, sized for a typical L2 cache.
+     */
+    public static final int TILE_BYTES = 256 * 1024;
+    /**
+     * Distance threshold that never stops a computation early.
+     */
+    public static final int NO_THRESHOLD = Integer.MAX_VALUE - 1;
+
+    /**
+     * Packed integers compared between checks against the threshold.
+     */
+    private static final int THRESHOLD_STRIDE = 64;
+    /**
+     * Lowest bit of every field.
+     */
+    private static final int FIELD_LOW_BITS = 0x11111111;
+    /**
+     * Largest number of sequences along a side of a tile.
+     */
+    private static final int MAX_TILE = 256;
+
+    /**
+     * The pool tiles run on.
+     */
+    private final ForkJoinPool pool;
+    /**
+     * Sequences along a side of a tile, zero to size tiles from TILE_BYTES.
+     */
+    private final int tileSize;
+
+    /**
+     * Create an engine running on the pool shared by this package, with tiles sized to the cache.
+     */
+    public DistanceEngine() {
+        this(Util.sharedPool(), 0);
+    }
+
+    /**
+     * Create an engine.
+     *
+     * @param pool the pool tiles run on.
+     * @param tileSize sequences along a side of a tile, zero to size tiles to the cache.
+     */
+    public DistanceEngine(final ForkJoinPool pool, final int tileSize) {
+        if (tileSize < 0) {
+            throw new IllegalArgumentException("Tile size may not be negative.");
+        }
+        this.pool = pool;
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * Compute the distances between every two sequences into a heap matrix.
+     *
+     * @param sequences equal length sequences.
+     * @return the distance matrix.
+     */
+    public final DistanceMatrix compute(final List<? extends PackedSequence> sequences) {
+        DistanceMatrix matrix = DistanceMatrix.heap(sequences.size());
+        compute(sequences, NO_THRESHOLD, matrix);
+        return matrix;
+    }
+
+    /**
+     * Compute the distances between every two sequences. A computation stops as soon as the
+     * distance exceeds the threshold, and threshold + 1 is recorded instead.
+     *
+     * @param sequences equal length sequences.
+     * @param threshold largest distance of interest.
+     * @param matrix the matrix receiving the distances, of the same size as the collection.
+     */
+    public final void compute(final List<? extends PackedSequence> sequences, final int threshold,
+                              final DistanceMatrix matrix) {
+        int n = sequences.size();
+        if (matrix.getSize() != n) {
+            throw new IllegalArgumentException("Matrix size does not match the number of sequences.");
+        }
+        if (threshold < 0 || threshold > NO_THRESHOLD) {
+            throw new IllegalArgumentException("Threshold must be between zero and NO_THRESHOLD.");
+        }
+        if (n < 2) {
+            return;
+        }
+        PackedSequence[] array = sequences.toArray(new PackedSequence[n]);
+        int length = array[0].getLength();
+        for (PackedSequence sequence : array) {
+            if (sequence.getLength() != length) {
+                throw new IllegalArgumentException("Sequences must have equal lengths.");
+            }
+        }
+        int side = tileSize;
+        if (side == 0) {
+            int bytes = Math.max(4, Sequence.wordsFor(length) * 4);
+            side = Math.max(1, Math.min(MAX_TILE, TILE_BYTES / (2 * bytes)));
+        }
+        int tiles = (n + side - 1) / side;
+        // tiles are numbered as longs: with a side of one the triangle holds more tiles than an int counts
+        pool.invoke(new TileTask(array, matrix, threshold, side, tiles, 0, (long) tiles * (tiles + 1) / 2));
+    }
+
+    /**
+     * Return the mismatch distance between two equal length sequences.
+     *
+     * @param a a sequence.
+     * @param b a sequence of the same length.
+     * @param threshold largest distance of interest.
+     * @return the distance, or threshold + 1 if the distance exceeds the threshold.
+     */
+    public static int distance(final PackedSequence a, final PackedSequence b, final int threshold) {
+        int words = a.wordCount();
+        int distance = 0;
+        for (int start = 0; start < words; start += THRESHOLD_STRIDE) {
+            int end = Math.min(words, start + THRESHOLD_STRIDE);
+            for (int k = start; k < end; k++) {
+                distance += mismatches(a.word(k) ^ b.word(k));
+            }
+            if (distance > threshold) {
+                return threshold + 1;
+            }
+        }
+        return distance;
+    }
+
+    /**
+     * Count the fields of an int that are not zero.
+     *
+     * @param difference the exclusive or of two packed integers.
+     * @return number of fields holding different base pairs.
+     */
+    protected static int mismatches(final int difference) {
+        int folded = difference | (difference >>> 1);
+        folded |= folded >>> 2;
+        return Integer.bitCount(folded & FIELD_LOW_BITS);
+    }
+
+    /**
+     * Computes a range of tiles of the upper triangle, splitting the range until one tile is left.
+     * Tiles are numbered row by row: (0, 0), (0, 1) ... (0, t - 1), (1, 1) ...
+     */
+    private static final class TileTask extends RecursiveAction {
+
+        /**
+         * Serialization version.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The sequences.
+         */
+        private final PackedSequence[] sequences;
+        /**
+         * The matrix receiving the distances.
+         */
+        private final DistanceMatrix matrix;
+        /**
+         * Largest distance of interest.
+         */
+        private final int threshold;
+        /**
+         * Sequences along a side of a tile.
+         */
+        private final int side;
+        /**
+         * Tiles along a side of the matrix.
+         */
+        private final int tiles;
+        /**
+         * First tile of the range.
+         */
+        private final long from;
+        /**
+         * End of the range, exclusive.
+         */
+        private final long to;
+
+        /**
+         * @param sequences the sequences
+         * @param matrix the matrix receiving the distances
+         * @param threshold largest distance of interest
+         * @param side sequences along a side of a tile
+         * @param tiles tiles along a side of the matrix
+         * @param from first tile of the range
+         * @param to end of the range, exclusive
+         */
+        TileTask(final PackedSequence[] sequences, final DistanceMatrix matrix, final int threshold,
+                 final int side, final int tiles, final long from, final long to) {
+            this.sequences = sequences;
+            this.matrix = matrix;
+            this.threshold = threshold;
+            this.side = side;
+            this.tiles = tiles;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                long middle = (from + to) >>> 1;
+                invokeAll(new TileTask(sequences, matrix, threshold, side, tiles, from, middle),
+                        new TileTask(sequences, matrix, threshold, side, tiles, middle, to));
+                return;
+            }
+            // find the tile row and column of the tile number: row r starts at tile r * tiles - r * (r - 1) / 2,
+            // so solve for the last row starting at or before it and correct for rounding
+            double b = 2.0 * tiles + 1;
+            int row = (int) ((b - Math.sqrt(b * b - 8.0 * from)) / 2);
+            while (row > 0 && firstTile(row) > from) {
+                row--;
+            }
+            while (row + 1 < tiles && firstTile(row + 1) <= from) {
+                row++;
+            }
+            int column = (int) (row + from - firstTile(row));
+
+            int n = sequences.length;
+            int rowEnd = Math.min(n, (row + 1) * side);
+            int columnEnd = Math.min(n, (column + 1) * side);
+            for (int i = row * side; i < rowEnd; i++) {
+                PackedSequence a = sequences[i];
+                for (int j = Math.max(i + 1, column * side); j < columnEnd; j++) {
+                    matrix.set(i, j, distance(a, sequences[j], threshold));
+                }
+            }
+        }
+
+        /**
+         * @param row a tile row
+         * @return the number of the first tile of the row
+         */
+        private long firstTile(final int row) {
+            return (long) row * tiles - (long) row * (row - 1) / 2;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.happyspace.basepair;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A symmetric matrix of distances between the sequences of a collection.
+ * Only the upper triangle, without the diagonal, is stored as packed ints either on the heap
+ * or in a memory mapped file.
+ */
+public final class DistanceMatrix {
+
+    /**
+     * Largest number of entries a mapped matrix may hold, 2GB of ints.
+     */
+    private static final long MAX_MAPPED_ENTRIES = Integer.MAX_VALUE / 4;
+
+    /**
+     * Number of sequences.
+     */
+    private final int size;
+    /**
+     * Upper triangle stored row by row.
+     */
+    private final IntBuffer entries;
+
+    /**
+     * @param size number of sequences
+     * @param entries storage for the upper triangle
+     */
+    private DistanceMatrix(final int size, final IntBuffer entries) {
+        this.size = size;
+        this.entries = entries;
+    }
+
+    /**
+     * Create a matrix held on the heap.
+     *
+     * @param size number of sequences.
+     * @return the matrix.
+     */
+    public static DistanceMatrix heap(final int size) {
+        long count = entries(size);
+        if (count > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many sequences for a heap matrix: " + size);
+        }
+        return new DistanceMatrix(size, IntBuffer.wrap(new int[(int) count]));
+    }
+
+    /**
+     * Create a matrix held in a memory mapped file. The file is created or truncated.
+     *
+     * @param size number of sequences.
+     * @param file the file backing the matrix.
+     * @return the matrix.
+     * @throws IOException the file could not be mapped.
+     */
+    public static DistanceMatrix mapped(final int size, final File file) throws IOException {
+        long count = entries(size);
+        if (count > MAX_MAPPED_ENTRIES) {
+            throw new IllegalArgumentException("Too many sequences for a mapped matrix: " + size);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            channel.truncate(0);
+            return new DistanceMatrix(size, channel.map(FileChannel.MapMode.READ_WRITE, 0, count * 4).asIntBuffer());
+        }
+    }
+
+    /**
+     * @return the number of sequences.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Return the distance between two sequences.
+     *
+     * @param i index of the first sequence.
+     * @param j index of the second sequence.
+     * @return the distance, zero on the diagonal.
+     */
+    public int get(final int i, final int j) {
+        if (i == j) {
+            checkIndex(i);
+            return 0;
+        }
+        return entries.get(index(Math.min(i, j), Math.max(i, j)));
+    }
+
+    /**
+     * Set the distance between two different sequences. Protected to indicate that this
+     * method should only be used in the context of this package. Threads may set different
+     * entries concurrently.
+     *
+     * @param i index of the first sequence.
+     * @param j index of the second sequence.
+     * @param distance the distance.
+     */
+    protected void set(final int i, final int j, final int distance) {
+        entries.put(index(Math.min(i, j), Math.max(i, j)), distance);
+    }
+
+    /**
+     * Return the position of an entry of the upper triangle.
+     *
+     * @param i row, less than column.
+     * @param j column.
+     * @return the position.
+     */
+    private int index(final int i, final int j) {
+        checkIndex(j);
+        if (i < 0 || i == j) {
+            throw new IndexOutOfBoundsException("Row must be positive and differ from the column.");
+        }
+        // rows before i hold (size - 1) + (size - 2) + ... + (size - i) entries
+        long row = (long) i * (2L * size - i - 1) / 2;
+        return (int) (row + j - i - 1);
+    }
+
+    /**
+     * @param i an index to check.
+     */
+    private void checkIndex(final int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index does not fall within the matrix.");
+        }
+    }
+
+    /**
+     * @param size number of sequences.
+     * @return number of entries in the upper triangle.
+     */
+    private static long entries(final int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Size may not be negative.");
+        }
+        return (long) size * (size - 1) / 2;
+    }
+}
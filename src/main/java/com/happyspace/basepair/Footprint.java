@@ -0,0 +1,176 @@
+package com.happyspace.basepair;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * A class containing utility methods to account for the heap used by objects on the running JVM.
+ * Sizes follow the HotSpot object layout for the VM options in effect: object header,
+ * reference size and object alignment.
+ */
+public final class Footprint {
+
+    /**
+     * Size of an object header in bytes.
+     */
+    public static final int OBJECT_HEADER;
+    /**
+     * Offset of the first element of an array in bytes.
+     */
+    public static final int ARRAY_HEADER;
+    /**
+     * Size of a reference in bytes.
+     */
+    public static final int REFERENCE;
+    /**
+     * Alignment of objects in bytes.
+     */
+    public static final int ALIGNMENT;
+
+    // read the layout from the VM options
+    static {
+        boolean is64 = !"32".equals(System.getProperty("sun.arch.data.model"));
+        HotSpotDiagnosticMXBean hotSpot = null;
+        try {
+            hotSpot = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+        }
+        catch (IllegalArgumentException e) {
+            // not a HotSpot VM, assume the defaults
+            hotSpot = null;
+        }
+        boolean compressedOops = is64 && option(hotSpot, "UseCompressedOops", true);
+        boolean compressedClass = is64 && option(hotSpot, "UseCompressedClassPointers", compressedOops);
+        boolean compactHeaders = is64 && option(hotSpot, "UseCompactObjectHeaders", false);
+
+        ALIGNMENT = (int) option(hotSpot, "ObjectAlignmentInBytes", 8L);
+        REFERENCE = !is64 || compressedOops ? 4 : 8;
+        if (!is64) {
+            OBJECT_HEADER = 8;
+            ARRAY_HEADER = 12;
+        }
+        else if (compactHeaders) {
+            OBJECT_HEADER = 8;
+            ARRAY_HEADER = 12;
+        }
+        else if (compressedClass) {
+            OBJECT_HEADER = 12;
+            ARRAY_HEADER = 16;
+        }
+        else {
+            OBJECT_HEADER = 16;
+            ARRAY_HEADER = 24;
+        }
+    }
+
+    /**
+     * Private constructor for utility class.
+     */
+    private Footprint() { }
+
+    /**
+     * Round a size up to the object alignment.
+     *
+     * @param size a size in bytes.
+     * @return the aligned size.
+     */
+    public static long align(final long size) {
+        return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    /**
+     * Return the size of an object.
+     *
+     * @param fieldBytes total size of the instance fields in bytes.
+     * @return the size of the object.
+     */
+    public static long object(final int fieldBytes) {
+        return align(OBJECT_HEADER + fieldBytes);
+    }
+
+    /**
+     * Return the size of an int array.
+     *
+     * @param length number of elements.
+     * @return the size of the array.
+     */
+    public static long intArray(final int length) {
+        return align(ARRAY_HEADER + 4L * length);
+    }
+
+    /**
+     * Return the size of a long array.
+     *
+     * @param length number of elements.
+     * @return the size of the array.
+     */
+    public static long longArray(final int length) {
+        // long elements start on an eight byte boundary
+        return align((ARRAY_HEADER + 7) / 8 * 8 + 8L * length);
+    }
+
+    /**
+     * Return the size of a byte array.
+     *
+     * @param length number of elements.
+     * @return the size of the array.
+     */
+    public static long byteArray(final int length) {
+        return align(ARRAY_HEADER + (long) length);
+    }
+
+    /**
+     * Return the size of an array of references.
+     *
+     * @param length number of elements.
+     * @return the size of the array.
+     */
+    public static long referenceArray(final int length) {
+        return align(ARRAY_HEADER + (long) REFERENCE * length);
+    }
+
+    /**
+     * Read a boolean VM option.
+     *
+     * @param hotSpot the diagnostic bean, or null.
+     * @param name the option name.
+     * @param fallback value used when the option is not available.
+     * @return the option value.
+     */
+    private static boolean option(final HotSpotDiagnosticMXBean hotSpot, final String name, final boolean fallback) {
+        String value = value(hotSpot, name);
+        return value == null ? fallback : Boolean.parseBoolean(value);
+    }
+
+    /**
+     * Read a numeric VM option.
+     *
+     * @param hotSpot the diagnostic bean, or null.
+     * @param name the option name.
+     * @param fallback value used when the option is not available.
+     * @return the option value.
+     */
+    private static long option(final HotSpotDiagnosticMXBean hotSpot, final String name, final long fallback) {
+        String value = value(hotSpot, name);
+        return value == null ? fallback : Long.parseLong(value);
+    }
+
+    /**
+     * Read a VM option.
+     *
+     * @param hotSpot the diagnostic bean, or null.
+     * @param name the option name.
+     * @return the option value, or null when the option is not available.
+     */
+    private static String value(final HotSpotDiagnosticMXBean hotSpot, final String name) {
+        if (hotSpot == null) {
+            return null;
+        }
+        try {
+            return hotSpot.getVMOption(name).getValue();
+        }
+        catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
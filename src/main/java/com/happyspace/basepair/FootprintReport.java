@@ -0,0 +1,88 @@
+package com.happyspace.basepair;
+
+/**
+ * An aggregate of the heap retained by a collection of base pair sequences.
+ */
+public class FootprintReport {
+
+    /**
+     * Number of sequences.
+     */
+    private final int sequences;
+    /**
+     * Total number of base pairs.
+     */
+    private final long basePairs;
+    /**
+     * Total number of retained bytes.
+     */
+    private final long retainedBytes;
+    /**
+     * Largest number of bytes retained by one sequence.
+     */
+    private final long largestBytes;
+
+    /**
+     * Measure a collection of sequences.
+     *
+     * @param collection the sequences to measure.
+     */
+    public FootprintReport(final Iterable<? extends BasePairSequence> collection) {
+        int count = 0;
+        long pairs = 0;
+        long bytes = 0;
+        long largest = 0;
+        for (BasePairSequence sequence : collection) {
+            long retained = sequence.retainedBytes();
+            count++;
+            pairs += sequence.getLength();
+            bytes += retained;
+            largest = Math.max(largest, retained);
+        }
+        this.sequences = count;
+        this.basePairs = pairs;
+        this.retainedBytes = bytes;
+        this.largestBytes = largest;
+    }
+
+    /**
+     * @return the number of sequences.
+     */
+    public final int getSequences() {
+        return sequences;
+    }
+
+    /**
+     * @return the total number of base pairs.
+     */
+    public final long getBasePairs() {
+        return basePairs;
+    }
+
+    /**
+     * @return the total number of retained bytes.
+     */
+    public final long getRetainedBytes() {
+        return retainedBytes;
+    }
+
+    /**
+     * @return the largest number of bytes retained by one sequence.
+     */
+    public final long getLargestBytes() {
+        return largestBytes;
+    }
+
+    /**
+     * @return retained bytes per base pair, zero when there are no base pairs.
+     */
+    public final double getBytesPerPair() {
+        return basePairs == 0 ? 0 : (double) retainedBytes / basePairs;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d sequences, %d base pairs, %d bytes retained (%.3f bytes per pair)",
+                sequences, basePairs, retainedBytes, getBytesPerPair());
+    }
+}
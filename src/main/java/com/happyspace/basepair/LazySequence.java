@@ -0,0 +1,317 @@
+package com.happyspace.basepair;
+
+import exception.MalformedInputException;
+import exception.UnknownEncoding;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A sequence of base pairs that keeps its source and encodes it a block at a time, when a
+ * position within the block is first read.
+ *
+ * Construction only checks the length of the source. Each block has a state flag: the first
+ * reader to claim a block with a compare and set encodes it and publishes the packed block for
+ * every later reader. A reader arriving while another encodes the block encodes a private copy
+ * rather than waiting, so a read never costs more than encoding one block and no lock is taken.
+ *
+ * The source must not change while the sequence is in use. Characters other than A, T, C or G
+ * are reported when their block is first read, as an IllegalStateException caused by UnknownEncoding.
+ * Consumers of PackedSequence read packed integers the same way, so they only encode the blocks they touch.
+ */
+public final class LazySequence implements PackedSequence {
+
+    /**
+     * Default number of packed integers per block: 8192 base pairs, 4KB once encoded.
+     */
+    public static final int DEFAULT_BLOCK_WORDS = 1024;
+
+    /**
+     * State of a block nobody has claimed.
+     */
+    private static final int UNENCODED = 0;
+    /**
+     * State of a block claimed by a thread encoding it.
+     */
+    private static final int ENCODING = 1;
+    /**
+     * State of a block whose packed integers are published.
+     */
+    private static final int READY = 2;
+    /**
+     * State of a block holding characters that are not base pairs.
+     */
+    private static final int FAILED = 3;
+
+    /**
+     * The characters of the base pairs.
+     */
+    private final CharSequence source;
+    /**
+     * Number of packed integers per block.
+     */
+    private final int blockWords;
+    /**
+     * State of each block.
+     */
+    private final AtomicIntegerArray states;
+    /**
+     * Packed integers of each block, null until published.
+     */
+    private final AtomicReferenceArray<int[]> blocks;
+    /**
+     * The number of base pairs.
+     */
+    private final int length;
+
+    /**
+     * Create a sequence over a string representing a sequence of base pairs.
+     *
+     * @param source characters of the base pairs, which must not change.
+     * @throws MalformedInputException Thrown when the source does not have an even number of elements.
+     */
+    public LazySequence(final CharSequence source) throws MalformedInputException {
+        this(source, DEFAULT_BLOCK_WORDS);
+    }
+
+    /**
+     * Create a sequence over a string representing a sequence of base pairs.
+     * Protected to indicate that this constructor should only be used in the context of this package.
+     *
+     * @param source characters of the base pairs, which must not change.
+     * @param blockWords number of packed integers per block.
+     * @throws MalformedInputException Thrown when the source does not have an even number of elements.
+     */
+    protected LazySequence(final CharSequence source, final int blockWords) throws MalformedInputException {
+        if (source.length() % 2 != 0) {
+            throw new MalformedInputException("Unexpected length: sequence should be composed of pairs.");
+        }
+        if (blockWords < 1) {
+            throw new IllegalArgumentException("Blocks must hold at least one packed integer.");
+        }
+        this.source = source;
+        this.blockWords = blockWords;
+        this.length = source.length() / 2;
+        int count = (Sequence.wordsFor(length) + blockWords - 1) / blockWords;
+        this.states = new AtomicIntegerArray(count);
+        this.blocks = new AtomicReferenceArray<>(count);
+    }
+
+    /**
+     * Create a sequence over a file of ASCII characters representing a sequence of base pairs.
+     * The file is mapped read only and must not change while the sequence is in use.
+     *
+     * @param file the file.
+     * @return the sequence.
+     * @throws IOException the file could not be mapped.
+     * @throws MalformedInputException Thrown when the file does not have an even number of characters.
+     */
+    public static LazySequence map(final File file) throws IOException, MalformedInputException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long size = raf.length();
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("File is too large to map.");
+            }
+            ByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new LazySequence(new MappedCharacters(buffer));
+        }
+    }
+
+    /**
+     * Get the base pair found at a given position within the base pair sequence,
+     * encoding its block if no reader has yet.
+     *
+     * @param position A zero based index into a sequence of base pairs.
+     * @return The base pair found at the position.
+     */
+    @Override
+    public BasePair get(final int position) {
+        if (position < 0 || position >= length) {
+            throw new IndexOutOfBoundsException("Position does not fall within the sequence.");
+        }
+        int index = position / Layout.size();
+        int[] block = block(index / blockWords);
+        int se = block[index % blockWords];
+        return Util.getBasePair(se, Layout.getPosition(position % Layout.size()));
+    }
+
+    @Override
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public int wordCount() {
+        return Sequence.wordsFor(length);
+    }
+
+    /**
+     * Return a packed integer backing this sequence, encoding its block if no reader has yet.
+     *
+     * @param index A zero based index of the packed integer.
+     * @return An int packed with base pair encodings.
+     */
+    @Override
+    public int word(final int index) {
+        if (index < 0 || index >= wordCount()) {
+            throw new IndexOutOfBoundsException("Index does not fall within the packed integers.");
+        }
+        return block(index / blockWords)[index % blockWords];
+    }
+
+    /**
+     * Return the bytes retained: this object, the state and block tables and the blocks encoded
+     * so far. The source is not counted, as it belongs to the caller or to the mapped file.
+     *
+     * @return retained bytes.
+     */
+    @Override
+    public long retainedBytes() {
+        int count = blocks.length();
+        long bytes = Footprint.object(3 * Footprint.REFERENCE + 8)
+                + Footprint.object(Footprint.REFERENCE) + Footprint.intArray(count)
+                + Footprint.object(Footprint.REFERENCE) + Footprint.referenceArray(count);
+        for (int b = 0; b < count; b++) {
+            int[] block = blocks.get(b);
+            if (block != null) {
+                bytes += Footprint.intArray(block.length);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Return the number of blocks whose packed integers are published.
+     *
+     * @return number of encoded blocks.
+     */
+    public int getEncodedBlocks() {
+        int encoded = 0;
+        for (int b = 0; b < states.length(); b++) {
+            if (states.get(b) == READY) {
+                encoded++;
+            }
+        }
+        return encoded;
+    }
+
+    /**
+     * Encode every block into an immutable sequence.
+     *
+     * @return the sequence.
+     */
+    public Sequence toSequence() {
+        int words = Sequence.wordsFor(length);
+        int[][] pages = Sequence.allocate(words);
+        for (int b = 0; b < blocks.length(); b++) {
+            int[] block = block(b);
+            Sequence.putWords(pages, b * blockWords, block, 0, block.length);
+        }
+        return new Sequence(pages, length);
+    }
+
+    /**
+     * Return the packed integers of a block, encoding them if they are not published.
+     *
+     * @param b the block.
+     * @return packed integers of the block.
+     */
+    private int[] block(final int b) {
+        int[] block = blocks.get(b);
+        if (block != null) {
+            return block;
+        }
+        if (!states.compareAndSet(b, UNENCODED, ENCODING)) {
+            // another reader encodes the block or found it invalid: encode a private copy
+            block = blocks.get(b);
+            return block != null ? block : encode(b);
+        }
+        int state = UNENCODED;
+        try {
+            block = encode(b);
+            blocks.set(b, block);
+            state = READY;
+            return block;
+        }
+        catch (IllegalStateException e) {
+            state = FAILED;
+            throw e;
+        }
+        finally {
+            // release the claim whatever encode throws; only invalid characters fail a block for good
+            states.set(b, state);
+        }
+    }
+
+    /**
+     * Validate and pack the base pairs of a block.
+     *
+     * @param b the block.
+     * @return packed integers of the block.
+     */
+    private int[] encode(final int b) {
+        int first = b * blockWords;
+        int words = Math.min(blockWords, Sequence.wordsFor(length) - first);
+        int end = Math.min(length, (first + words) * Layout.size()) * 2;
+        for (int c = first * Layout.size() * 2; c < end; c++) {
+            char ch = source.charAt(c);
+            if (ch != 'A' && ch != 'T' && ch != 'C' && ch != 'G') {
+                throw new IllegalStateException("Block " + b + " could not be encoded.", new UnknownEncoding(
+                        "Unexpected encoding at character " + c + ": sequence may only be contain A, T, C or G"));
+            }
+        }
+        int[] block = new int[words];
+        for (int w = 0; w < words; w++) {
+            block[w] = Util.packWord(source, (first + w) * Layout.size(), length);
+        }
+        return block;
+    }
+
+    /**
+     * The characters of a mapped file of ASCII characters.
+     */
+    private static final class MappedCharacters implements CharSequence {
+
+        /**
+         * The mapped file, read only with absolute gets so it may be shared between threads.
+         */
+        private final ByteBuffer buffer;
+
+        /**
+         * @param buffer the mapped file
+         */
+        MappedCharacters(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int length() {
+            return buffer.limit();
+        }
+
+        @Override
+        public char charAt(final int index) {
+            return (char) (buffer.get(index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(final int start, final int end) {
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(start);
+            slice.limit(end);
+            return new MappedCharacters(slice.slice());
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(length());
+            sb.append(this, 0, length());
+            return sb.toString();
+        }
+    }
+}
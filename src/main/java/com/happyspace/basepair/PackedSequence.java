@@ -0,0 +1,24 @@
+package com.happyspace.basepair;
+
+/**
+ * A sequence of base pairs that can also be read a packed integer at a time, eight base pairs
+ * per integer in the order of Layout and padded after the last base pair. Transforms, distances,
+ * alignments and the segment store read their operands through this interface.
+ */
+public interface PackedSequence extends BasePairSequence {
+
+    /**
+     * Return the number of packed integers backing this sequence.
+     *
+     * @return number of packed integers.
+     */
+    int wordCount();
+
+    /**
+     * Return a packed integer backing this sequence.
+     *
+     * @param index A zero based index of the packed integer.
+     * @return An int packed with base pair encodings.
+     */
+    int word(int index);
+}
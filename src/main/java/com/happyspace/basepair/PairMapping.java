@@ -0,0 +1,85 @@
+package com.happyspace.basepair;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * A substitution of base pairs applied to whole packed integers.
+ * The substitution is expanded into a lookup table translating the four fields of
+ * a 16-bit half at once, so a packed integer is translated with two lookups.
+ */
+public final class PairMapping {
+
+    /**
+     * Complement of each base pair: A and T, C and G are swapped. AC -> TG, CG -> CG.
+     */
+    public static final PairMapping COMPLEMENT;
+
+    /**
+     * Number of fields in a 16-bit half.
+     */
+    private static final int FIELDS_PER_HALF = 4;
+    /**
+     * Mask of a 16-bit half.
+     */
+    private static final int HALF_MASK = 0xFFFF;
+
+    static {
+        Map<BasePair, BasePair> complement = new EnumMap<>(BasePair.class);
+        complement.put(BasePair.AA, BasePair.TT);
+        complement.put(BasePair.TT, BasePair.AA);
+        complement.put(BasePair.CC, BasePair.GG);
+        complement.put(BasePair.GG, BasePair.CC);
+        complement.put(BasePair.AC, BasePair.TG);
+        complement.put(BasePair.TG, BasePair.AC);
+        complement.put(BasePair.AG, BasePair.TC);
+        complement.put(BasePair.TC, BasePair.AG);
+        complement.put(BasePair.AT, BasePair.AT);
+        complement.put(BasePair.CG, BasePair.CG);
+        COMPLEMENT = new PairMapping(complement);
+    }
+
+    /**
+     * Translation of every 16-bit half, 65,536 entries.
+     */
+    private final char[] table;
+
+    /**
+     * Create a mapping. Base pairs missing from the map are left unchanged and padding
+     * always stays padding.
+     *
+     * @param substitutions base pair substitutions.
+     */
+    public PairMapping(final Map<BasePair, BasePair> substitutions) {
+        int[] fields = new int[Layout.MASK + 1];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = i;
+        }
+        for (Map.Entry<BasePair, BasePair> entry : substitutions.entrySet()) {
+            if (entry.getKey() == BasePair.__ || entry.getValue() == BasePair.__) {
+                throw new IllegalArgumentException("Padding may not be substituted.");
+            }
+            fields[entry.getKey().getEncoding()] = entry.getValue().getEncoding();
+        }
+
+        table = new char[HALF_MASK + 1];
+        for (int half = 0; half <= HALF_MASK; half++) {
+            int translated = 0;
+            for (int f = 0; f < FIELDS_PER_HALF; f++) {
+                int offset = Layout.getPosition(f).getOffset();
+                translated |= fields[(half >>> offset) & Layout.MASK] << offset;
+            }
+            table[half] = (char) translated;
+        }
+    }
+
+    /**
+     * Translate every field of a packed integer.
+     *
+     * @param packed an int packed with base pair encodings.
+     * @return an int packed with the substituted base pair encodings.
+     */
+    public int translate(final int packed) {
+        return table[packed & HALF_MASK] | (table[packed >>> 16] << 16);
+    }
+}
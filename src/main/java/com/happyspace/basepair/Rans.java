@@ -0,0 +1,157 @@
+package com.happyspace.basepair;
+
+/**
+ * A byte-wise range asymmetric numeral system (rANS) coder for the fields of packed integers,
+ * with a static model over the base pair alphabet, padding included.
+ *
+ * An encoded stream holds the normalized symbol frequencies, the final encoder state and
+ * the renormalization bytes in the order the decoder reads them.
+ */
+final class Rans {
+
+    /**
+     * Number of symbols: padding and the ten base pairs.
+     */
+    static final int SYMBOLS = BasePair.values().length;
+    /**
+     * Bits of precision of the normalized frequencies.
+     */
+    private static final int PROB_BITS = 12;
+    /**
+     * Sum of the normalized frequencies.
+     */
+    private static final int PROB_SCALE = 1 << PROB_BITS;
+    /**
+     * Lower bound of the coder state.
+     */
+    private static final long RANS_L = 1L << 23;
+    /**
+     * Size of the frequency table at the start of a stream.
+     */
+    private static final int TABLE_SIZE = SYMBOLS * 2;
+    /**
+     * Size of the coder state.
+     */
+    private static final int STATE_SIZE = 4;
+
+    /**
+     * Private constructor for utility class.
+     */
+    private Rans() { }
+
+    /**
+     * Encode symbols.
+     *
+     * @param symbols symbols below SYMBOLS.
+     * @param count number of symbols to encode.
+     * @return the encoded stream.
+     */
+    static byte[] encode(final byte[] symbols, final int count) {
+        int[] counts = new int[SYMBOLS];
+        for (int i = 0; i < count; i++) {
+            counts[symbols[i]]++;
+        }
+        int[] freq = normalize(counts, count);
+        int[] start = cumulative(freq);
+
+        // renormalization bytes are written back to front so the decoder reads them forwards
+        byte[] buffer = new byte[2 * count + STATE_SIZE];
+        int ptr = buffer.length;
+        long x = RANS_L;
+        for (int i = count - 1; i >= 0; i--) {
+            int s = symbols[i];
+            long xMax = ((RANS_L >> PROB_BITS) << 8) * freq[s];
+            while (x >= xMax) {
+                buffer[--ptr] = (byte) x;
+                x >>>= 8;
+            }
+            x = ((x / freq[s]) << PROB_BITS) + (x % freq[s]) + start[s];
+        }
+        ptr -= STATE_SIZE;
+        for (int b = 0; b < STATE_SIZE; b++) {
+            buffer[ptr + b] = (byte) (x >>> (8 * b));
+        }
+
+        byte[] stream = new byte[TABLE_SIZE + buffer.length - ptr];
+        for (int s = 0; s < SYMBOLS; s++) {
+            stream[2 * s] = (byte) (freq[s] >>> 8);
+            stream[2 * s + 1] = (byte) freq[s];
+        }
+        System.arraycopy(buffer, ptr, stream, TABLE_SIZE, buffer.length - ptr);
+        return stream;
+    }
+
+    /**
+     * Decode symbols.
+     *
+     * @param data array holding the encoded stream.
+     * @param from offset of the stream within the array.
+     * @param symbols destination of the decoded symbols.
+     * @param count number of symbols to decode.
+     */
+    static void decode(final byte[] data, final int from, final byte[] symbols, final int count) {
+        int[] freq = new int[SYMBOLS];
+        for (int s = 0; s < SYMBOLS; s++) {
+            freq[s] = ((data[from + 2 * s] & 0xFF) << 8) | (data[from + 2 * s + 1] & 0xFF);
+        }
+        int[] start = cumulative(freq);
+        byte[] slots = new byte[PROB_SCALE];
+        for (int s = 0; s < SYMBOLS; s++) {
+            for (int slot = start[s]; slot < start[s] + freq[s]; slot++) {
+                slots[slot] = (byte) s;
+            }
+        }
+
+        int p = from + TABLE_SIZE;
+        long x = 0;
+        for (int b = 0; b < STATE_SIZE; b++) {
+            x |= (long) (data[p++] & 0xFF) << (8 * b);
+        }
+        for (int i = 0; i < count; i++) {
+            int slot = (int) (x & (PROB_SCALE - 1));
+            int s = slots[slot];
+            symbols[i] = (byte) s;
+            x = freq[s] * (x >>> PROB_BITS) + slot - start[s];
+            while (x < RANS_L) {
+                x = (x << 8) | (data[p++] & 0xFF);
+            }
+        }
+    }
+
+    /**
+     * Scale symbol counts to frequencies summing to PROB_SCALE, keeping every present symbol.
+     *
+     * @param counts occurrences of each symbol.
+     * @param total sum of the counts, at least one.
+     * @return normalized frequencies.
+     */
+    private static int[] normalize(final int[] counts, final int total) {
+        int[] freq = new int[SYMBOLS];
+        int sum = 0;
+        int largest = 0;
+        for (int s = 0; s < SYMBOLS; s++) {
+            if (counts[s] > 0) {
+                freq[s] = Math.max(1, (int) ((long) counts[s] * PROB_SCALE / total));
+                sum += freq[s];
+            }
+            if (counts[s] > counts[largest]) {
+                largest = s;
+            }
+        }
+        // the most frequent symbol holds the largest share of the scale and absorbs the rounding
+        freq[largest] += PROB_SCALE - sum;
+        return freq;
+    }
+
+    /**
+     * @param freq symbol frequencies.
+     * @return the start of each symbol's range of slots.
+     */
+    private static int[] cumulative(final int[] freq) {
+        int[] start = new int[SYMBOLS];
+        for (int s = 1; s < SYMBOLS; s++) {
+            start[s] = start[s - 1] + freq[s - 1];
+        }
+        return start;
+    }
+}
@@ -0,0 +1,88 @@
+package com.happyspace.basepair;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scores of aligning one base pair against another, used by Aligner.
+ * Scores are held in a table indexed directly by the encodings of two base pairs.
+ */
+public final class ScoringMatrix {
+
+    /**
+     * Number of possible encodings of a field.
+     */
+    protected static final int ENCODINGS = Layout.MASK + 1;
+
+    /**
+     * Score of each pair of encodings, indexed by first * ENCODINGS + second.
+     */
+    private final int[] scores = new int[ENCODINGS * ENCODINGS];
+
+    /**
+     * Create a matrix scoring every identical pair with one score and every other pair with another.
+     *
+     * @param match score of identical base pairs.
+     * @param mismatch score of different base pairs.
+     */
+    public ScoringMatrix(final int match, final int mismatch) {
+        for (int a = 0; a < ENCODINGS; a++) {
+            for (int b = 0; b < ENCODINGS; b++) {
+                boolean same = a == b && a != BasePair.PADDING_ENCODING;
+                scores[a * ENCODINGS + b] = same ? match : mismatch;
+            }
+        }
+    }
+
+    /**
+     * Create a matrix from a table of scores over the ten base pairs in the order of BasePair.BASEPAIRSET.
+     * Padding, which only appears for pairs the encoder did not recognise, scores as the lowest score.
+     *
+     * @param table a ten by ten table of scores.
+     */
+    public ScoringMatrix(final int[][] table) {
+        List<BasePair> pairs = new ArrayList<>(BasePair.BASEPAIRSET);
+        if (table.length != pairs.size()) {
+            throw new IllegalArgumentException("Table must have a row per base pair.");
+        }
+        int lowest = Integer.MAX_VALUE;
+        for (int[] row : table) {
+            if (row.length != pairs.size()) {
+                throw new IllegalArgumentException("Table must have a column per base pair.");
+            }
+            for (int score : row) {
+                lowest = Math.min(lowest, score);
+            }
+        }
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = lowest;
+        }
+        for (int a = 0; a < pairs.size(); a++) {
+            for (int b = 0; b < pairs.size(); b++) {
+                scores[pairs.get(a).getEncoding() * ENCODINGS + pairs.get(b).getEncoding()] = table[a][b];
+            }
+        }
+    }
+
+    /**
+     * Return the score of aligning two base pairs.
+     *
+     * @param first a base pair.
+     * @param second a base pair.
+     * @return the score.
+     */
+    public int getScore(final BasePair first, final BasePair second) {
+        return score(first.getEncoding(), second.getEncoding());
+    }
+
+    /**
+     * Return the score of aligning two encodings.
+     *
+     * @param first an encoding.
+     * @param second an encoding.
+     * @return the score.
+     */
+    protected int score(final int first, final int second) {
+        return scores[first * ENCODINGS + second];
+    }
+}
@@ -0,0 +1,444 @@
+package com.happyspace.basepair;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.zip.CRC32;
+
+/**
+ * A sealed, immutable segment file of a segment store.
+ *
+ * A segment file starts with a header followed by records. Each record holds an id, the number
+ * of base pairs (-1 for a tombstone), the packed integers of the sequence and a CRC32 checksum.
+ * Sealed segments are memory mapped and carry an index of ids sorted for binary search.
+ */
+final class Segment {
+
+    /**
+     * Magic number at the start of every segment file.
+     */
+    static final int MAGIC = 0x42505331;
+    /**
+     * Version of the segment file format.
+     */
+    static final int VERSION = 1;
+    /**
+     * Size of the segment header: magic, version, number and base number.
+     */
+    static final int HEADER_SIZE = 24;
+    /**
+     * Size of the record header: id and length.
+     */
+    static final int RECORD_HEADER_SIZE = 12;
+    /**
+     * Size of the record trailer: checksum.
+     */
+    static final int RECORD_TRAILER_SIZE = 4;
+    /**
+     * Length recorded for a deleted id.
+     */
+    static final int TOMBSTONE = -1;
+    /**
+     * File name suffix of a segment file.
+     */
+    static final String SUFFIX = ".seg";
+
+    /**
+     * The segment file.
+     */
+    private final File file;
+    /**
+     * The number of the segment. Segments with a higher number hold newer records.
+     */
+    private final long number;
+    /**
+     * The lowest segment number merged into this segment. Equal to number unless compacted.
+     */
+    private final long baseNumber;
+    /**
+     * Sorted ids of the records in the segment.
+     */
+    private final long[] ids;
+    /**
+     * Offsets of the records in the segment, parallel to ids.
+     */
+    private final int[] offsets;
+    /**
+     * The mapped content of the segment file.
+     */
+    private final MappedByteBuffer data;
+
+    /**
+     * @param file the segment file
+     * @param number the segment number
+     * @param baseNumber the lowest segment number merged into this segment
+     * @param ids sorted ids
+     * @param offsets record offsets parallel to ids
+     * @param data mapped content of the file
+     */
+    private Segment(final File file, final long number, final long baseNumber,
+                    final long[] ids, final int[] offsets, final MappedByteBuffer data) {
+        this.file = file;
+        this.number = number;
+        this.baseNumber = baseNumber;
+        this.ids = ids;
+        this.offsets = offsets;
+        this.data = data;
+    }
+
+    /**
+     * Seal a segment that has been fully written through the given channel.
+     *
+     * @param file the segment file
+     * @param channel an open channel to the file, forced by the caller
+     * @param number the segment number
+     * @param baseNumber the lowest segment number merged into this segment
+     * @param ids sorted ids
+     * @param offsets record offsets parallel to ids
+     * @return the sealed segment
+     * @throws IOException the file could not be mapped
+     */
+    static Segment seal(final File file, final FileChannel channel, final long number, final long baseNumber,
+                        final long[] ids, final int[] offsets) throws IOException {
+        MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        return new Segment(file, number, baseNumber, ids, offsets, data);
+    }
+
+    /**
+     * Open an existing segment file, verify every record and build the sorted index.
+     * A torn or corrupt tail, left by a crash during a write, is truncated.
+     *
+     * @param file the segment file
+     * @return the sealed segment
+     * @throws IOException the file could not be read or does not have a valid header
+     */
+    static Segment open(final File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Unexpected size for segment " + file);
+            }
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+                throw new IOException("Unexpected header for segment " + file);
+            }
+            long number = data.getLong(8);
+            long baseNumber = data.getLong(16);
+
+            long[] scannedIds = new long[16];
+            int[] scannedOffsets = new int[16];
+            int count = 0;
+            byte[] scratch = new byte[0];
+            CRC32 crc = new CRC32();
+            int position = HEADER_SIZE;
+            while (size - position >= RECORD_HEADER_SIZE + RECORD_TRAILER_SIZE) {
+                int length = data.getInt(position + 8);
+                if (length < TOMBSTONE) {
+                    break;
+                }
+                // a torn length may be near Integer.MAX_VALUE, so the size is checked as a long
+                long recordSize = recordBytes(length);
+                if (recordSize > size - position) {
+                    break;
+                }
+                int checked = (int) recordSize - RECORD_TRAILER_SIZE;
+                if (scratch.length < Math.min(checked, Sequence.PAGE_BYTES)) {
+                    scratch = new byte[Math.min(checked, Sequence.PAGE_BYTES)];
+                }
+                // checksum a page at a time, so a large record needs no array as large as itself
+                ByteBuffer record = data.duplicate();
+                record.position(position);
+                crc.reset();
+                for (int done = 0; done < checked; done += scratch.length) {
+                    int chunk = Math.min(scratch.length, checked - done);
+                    record.get(scratch, 0, chunk);
+                    crc.update(scratch, 0, chunk);
+                }
+                if ((int) crc.getValue() != data.getInt(position + checked)) {
+                    break;
+                }
+                if (count == scannedIds.length) {
+                    scannedIds = Arrays.copyOf(scannedIds, count * 2);
+                    scannedOffsets = Arrays.copyOf(scannedOffsets, count * 2);
+                }
+                scannedIds[count] = data.getLong(position);
+                scannedOffsets[count] = position;
+                count++;
+                position += (int) recordSize;
+            }
+            if (position != size) {
+                channel.truncate(position);
+                data = channel.map(FileChannel.MapMode.READ_ONLY, 0, position);
+            }
+            return sortIndex(file, number, baseNumber, scannedIds, scannedOffsets, count, data);
+        }
+    }
+
+    /**
+     * Return whether a segment file starts with a complete, valid header.
+     *
+     * @param file the segment file
+     * @return true if the header is complete and valid
+     * @throws IOException the file could not be read
+     */
+    static boolean hasHeader(final File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return raf.length() >= HEADER_SIZE && raf.readInt() == MAGIC && raf.readInt() == VERSION;
+        }
+    }
+
+    /**
+     * Build a segment with an index sorted by id. When an id appears more than once
+     * the last record written wins.
+     *
+     * @param file the segment file
+     * @param number the segment number
+     * @param baseNumber the lowest segment number merged into this segment
+     * @param scannedIds ids in file order
+     * @param scannedOffsets offsets in file order
+     * @param count number of scanned records
+     * @param data mapped content of the file
+     * @return the segment
+     */
+    private static Segment sortIndex(final File file, final long number, final long baseNumber,
+                                     final long[] scannedIds, final int[] scannedOffsets, final int count,
+                                     final MappedByteBuffer data) {
+        // sort positions by id, then by offset, so the last record of an id comes last
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer a, final Integer b) {
+                int c = Long.compare(scannedIds[a], scannedIds[b]);
+                return c != 0 ? c : Integer.compare(a, b);
+            }
+        });
+        long[] ids = new long[count];
+        int[] offsets = new int[count];
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            int k = order[i];
+            if (n > 0 && ids[n - 1] == scannedIds[k]) {
+                offsets[n - 1] = scannedOffsets[k];
+            }
+            else {
+                ids[n] = scannedIds[k];
+                offsets[n] = scannedOffsets[k];
+                n++;
+            }
+        }
+        return new Segment(file, number, baseNumber, Arrays.copyOf(ids, n), Arrays.copyOf(offsets, n), data);
+    }
+
+    /**
+     * Write a segment header.
+     *
+     * @param buffer destination buffer
+     * @param number the segment number
+     * @param baseNumber the lowest segment number merged into the segment
+     */
+    static void writeHeader(final ByteBuffer buffer, final long number, final long baseNumber) {
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(number);
+        buffer.putLong(baseNumber);
+    }
+
+    /**
+     * Return the size of a record.
+     *
+     * @param length number of base pairs, or TOMBSTONE
+     * @return the size of the record in bytes
+     */
+    static int recordSize(final int length) {
+        return (int) recordBytes(length);
+    }
+
+    /**
+     * Return the size of a record without overflowing for any length, such as one read from a torn record.
+     *
+     * @param length number of base pairs, or TOMBSTONE
+     * @return the size of the record in bytes
+     */
+    static long recordBytes(final int length) {
+        long words = length > 0 ? (length + (long) Layout.size() - 1) / Layout.size() : 0;
+        return RECORD_HEADER_SIZE + words * 4 + RECORD_TRAILER_SIZE;
+    }
+
+    /**
+     * Write a record to a heap buffer.
+     *
+     * @param buffer destination buffer with an accessible array
+     * @param id the id of the record
+     * @param sequence the sequence, or null for a tombstone
+     */
+    static void writeRecord(final ByteBuffer buffer, final long id, final PackedSequence sequence) {
+        int start = buffer.position();
+        buffer.putLong(id);
+        if (sequence == null) {
+            buffer.putInt(TOMBSTONE);
+        }
+        else {
+            buffer.putInt(sequence.getLength());
+            int words = sequence.wordCount();
+            for (int i = 0; i < words; i++) {
+                buffer.putInt(sequence.word(i));
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), buffer.arrayOffset() + start, buffer.position() - start);
+        buffer.putInt((int) crc.getValue());
+    }
+
+    /**
+     * Decode a record.
+     *
+     * @param buffer a buffer holding the record
+     * @param offset offset of the record within the buffer
+     * @return the sequence, or null if the record is a tombstone
+     */
+    static Sequence decode(final ByteBuffer buffer, final int offset) {
+        int length = buffer.getInt(offset + 8);
+        if (length == TOMBSTONE) {
+            return null;
+        }
+        int[][] pages = Sequence.allocate(Sequence.wordsFor(length));
+        ByteBuffer source = buffer.duplicate();
+        source.position(offset + RECORD_HEADER_SIZE);
+        IntBuffer words = source.asIntBuffer();
+        for (int[] page : pages) {
+            words.get(page);
+        }
+        return new Sequence(pages, length);
+    }
+
+    /**
+     * Decode a record from a file, a page at a time.
+     *
+     * @param file the file holding the record, positioned by this method
+     * @param offset offset of the record within the file
+     * @return the sequence, or null if the record is a tombstone
+     * @throws IOException the record could not be read
+     */
+    static Sequence decode(final RandomAccessFile file, final long offset) throws IOException {
+        file.seek(offset + RECORD_HEADER_SIZE - 4);
+        int length = file.readInt();
+        if (length == TOMBSTONE) {
+            return null;
+        }
+        int[][] pages = Sequence.allocate(Sequence.wordsFor(length));
+        byte[] bytes = new byte[pages.length > 0 ? pages[0].length * 4 : 0];
+        for (int[] page : pages) {
+            file.readFully(bytes, 0, page.length * 4);
+            ByteBuffer.wrap(bytes, 0, page.length * 4).asIntBuffer().get(page);
+        }
+        return new Sequence(pages, length);
+    }
+
+    /**
+     * Find the record of an id.
+     *
+     * @param id the id
+     * @return the offset of the record, or -1 if the id is not in this segment
+     */
+    int find(final long id) {
+        int i = Arrays.binarySearch(ids, id);
+        return i >= 0 ? offsets[i] : -1;
+    }
+
+    /**
+     * Read the record at an offset.
+     *
+     * @param offset the offset of the record
+     * @return the sequence, or null if the record is a tombstone
+     */
+    Sequence read(final int offset) {
+        return decode(data, offset);
+    }
+
+    /**
+     * Return whether the record at an offset is a tombstone.
+     *
+     * @param offset the offset of the record
+     * @return true for a tombstone
+     */
+    boolean isTombstone(final int offset) {
+        return data.getInt(offset + 8) == TOMBSTONE;
+    }
+
+    /**
+     * Return a view of the raw bytes of the record at an offset.
+     *
+     * @param offset the offset of the record
+     * @return the bytes of the record, checksum included
+     */
+    ByteBuffer record(final int offset) {
+        ByteBuffer record = data.duplicate();
+        record.position(offset);
+        record.limit(offset + recordSize(data.getInt(offset + 8)));
+        return record.slice();
+    }
+
+    /**
+     * @return the number of distinct ids in the segment.
+     */
+    int size() {
+        return ids.length;
+    }
+
+    /**
+     * @param index position within the sorted index
+     * @return the id at the position
+     */
+    long idAt(final int index) {
+        return ids[index];
+    }
+
+    /**
+     * @param index position within the sorted index
+     * @return the record offset at the position
+     */
+    int offsetAt(final int index) {
+        return offsets[index];
+    }
+
+    /**
+     * @return the segment file.
+     */
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the segment number.
+     */
+    long getNumber() {
+        return number;
+    }
+
+    /**
+     * @return the lowest segment number merged into this segment.
+     */
+    long getBaseNumber() {
+        return baseNumber;
+    }
+
+    /**
+     * Return the file name of a segment.
+     *
+     * @param number the segment number
+     * @return the file name
+     */
+    static String fileName(final long number) {
+        return String.format("%016d%s", number, SUFFIX);
+    }
+}
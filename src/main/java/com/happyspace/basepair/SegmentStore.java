@@ -0,0 +1,824 @@
+package com.happyspace.basepair;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * An embedded store persisting base pair sequences by id in append-only segment files.
+ *
+ * Writes are appended to a buffer and reach the active segment file in batches. A background
+ * thread forces the active segment to disk every sync interval, so one fsync commits a whole
+ * group of writes; call sync to make every previous write durable before returning.
+ * When the active segment is full it is sealed: memory mapped and indexed by sorted id.
+ * Deletes append a tombstone. Once enough segments are sealed they are merged in the
+ * background, keeping only the newest live record of each id.
+ */
+public class SegmentStore implements Closeable {
+
+    /**
+     * Default size at which the active segment is sealed.
+     */
+    public static final long DEFAULT_SEGMENT_BYTES = 64L << 20;
+    /**
+     * Default interval in milliseconds between background syncs.
+     */
+    public static final long DEFAULT_SYNC_INTERVAL = 10;
+    /**
+     * Default number of sealed segments that triggers a background compaction.
+     */
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 4;
+    /**
+     * Size of the buffer collecting writes for the active segment, a page so it is not humongous.
+     */
+    private static final int WRITE_BUFFER_SIZE = Sequence.PAGE_BYTES;
+    /**
+     * File name suffix of a compaction in progress.
+     */
+    private static final String COMPACT_SUFFIX = ".compact";
+    /**
+     * Logger for failures on background threads.
+     */
+    private static final Logger LOGGER = LogManager.getLogger(SegmentStore.class);
+
+    /**
+     * The directory holding the segment files.
+     */
+    private final File directory;
+    /**
+     * Size at which the active segment is sealed.
+     */
+    private final long maxSegmentBytes;
+    /**
+     * Number of sealed segments that triggers a background compaction.
+     */
+    private final int compactionThreshold;
+    /**
+     * Writers hold the write lock, readers the read lock.
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * Serializes forcing the active segment to disk.
+     */
+    private final Object syncMonitor = new Object();
+    /**
+     * Set while a compaction runs.
+     */
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    /**
+     * Runs background syncs and compactions.
+     */
+    private final ScheduledExecutorService executor;
+    /**
+     * Sealed segments, oldest first. Replaced, never modified.
+     */
+    private volatile List<Segment> sealed;
+
+    /**
+     * The active segment file.
+     */
+    private File activeFile;
+    /**
+     * The number of the active segment.
+     */
+    private long activeNumber;
+    /**
+     * Channel appending to the active segment.
+     */
+    private FileChannel activeChannel;
+    /**
+     * File reading drained records of the active segment, shared by readers holding the read lock.
+     */
+    private RandomAccessFile activeReader;
+    /**
+     * Offsets of the records in the active segment by id.
+     */
+    private final TreeMap<Long, Integer> activeIndex = new TreeMap<>();
+    /**
+     * Records appended to the active segment but not yet written to its channel.
+     */
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+    /**
+     * Number of bytes of the active segment written to its channel.
+     */
+    private long flushedPosition;
+    /**
+     * Number of records appended.
+     */
+    private long appended;
+    /**
+     * Number of records written to a channel.
+     */
+    private long drained;
+    /**
+     * Number of records forced to disk. Guarded by syncMonitor.
+     */
+    private long durable;
+    /**
+     * Whether the store has been closed.
+     */
+    private boolean closed;
+
+    /**
+     * Open or create a store with default settings.
+     *
+     * @param directory the directory holding the segment files
+     * @throws IOException the directory could not be read or created
+     */
+    public SegmentStore(final File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_BYTES, DEFAULT_SYNC_INTERVAL, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * Open or create a store.
+     *
+     * @param directory the directory holding the segment files
+     * @param maxSegmentBytes size at which the active segment is sealed
+     * @param syncInterval milliseconds between background syncs, zero to only sync on request
+     * @param compactionThreshold number of sealed segments that triggers a background compaction
+     * @throws IOException the directory could not be read or created
+     */
+    public SegmentStore(final File directory, final long maxSegmentBytes, final long syncInterval,
+                        final int compactionThreshold) throws IOException {
+        if (maxSegmentBytes <= Segment.HEADER_SIZE || maxSegmentBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment size must be between the header size and 2GB.");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+        this.directory = directory;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.compactionThreshold = Math.max(2, compactionThreshold);
+        this.sealed = recover();
+
+        long next = 1;
+        if (!sealed.isEmpty()) {
+            next = sealed.get(sealed.size() - 1).getNumber() + 1;
+        }
+        openActive(next);
+
+        executor = Executors.newScheduledThreadPool(2, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(runnable, "segment-store-" + directory.getName());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        if (syncInterval > 0) {
+            executor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        sync();
+                    }
+                    catch (IOException e) {
+                        LOGGER.error("Background sync failed for " + directory, e);
+                    }
+                }
+            }, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+        }
+        if (sealed.size() >= this.compactionThreshold) {
+            scheduleCompaction();
+        }
+    }
+
+    /**
+     * Store a sequence under an id, replacing any sequence stored under the same id.
+     * The write is durable after the next sync.
+     *
+     * @param id the id
+     * @param sequence the sequence to store
+     * @throws IOException the write failed
+     */
+    public final void put(final long id, final PackedSequence sequence) throws IOException {
+        if (sequence == null) {
+            throw new IllegalArgumentException("Sequence may not be null, use delete.");
+        }
+        append(id, sequence);
+    }
+
+    /**
+     * Delete the sequence stored under an id by appending a tombstone.
+     * The delete is durable after the next sync.
+     *
+     * @param id the id
+     * @throws IOException the write failed
+     */
+    public final void delete(final long id) throws IOException {
+        append(id, null);
+    }
+
+    /**
+     * Read the sequence stored under an id.
+     *
+     * @param id the id
+     * @return the sequence, or null if no sequence is stored under the id
+     * @throws IOException the read failed
+     */
+    public final Sequence get(final long id) throws IOException {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            Integer offset = activeIndex.get(id);
+            if (offset != null) {
+                return readActive(offset);
+            }
+            List<Segment> segments = sealed;
+            for (int i = segments.size() - 1; i >= 0; i--) {
+                Segment segment = segments.get(i);
+                int found = segment.find(id);
+                if (found >= 0) {
+                    return segment.read(found);
+                }
+            }
+            return null;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Force every write made before this call to disk. Concurrent callers share one fsync.
+     *
+     * @throws IOException the sync failed
+     */
+    public final void sync() throws IOException {
+        long target;
+        long number;
+        FileChannel channel;
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            drain();
+            target = drained;
+            number = activeNumber;
+            channel = activeChannel;
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+        ClosedChannelException failure;
+        synchronized (syncMonitor) {
+            if (durable >= target) {
+                return;
+            }
+            try {
+                channel.force(false);
+                durable = Math.max(durable, target);
+                return;
+            }
+            catch (ClosedChannelException e) {
+                failure = e;
+            }
+        }
+        // the write lock is taken before syncMonitor elsewhere, so the channel is checked outside it
+        if (reopenInterrupted(number)) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Decide why a channel forced by sync was closed. Sealing the segment and closing the store
+     * both force the channel first, so nothing is lost. Any other close, such as an interrupt of
+     * the syncing thread, left the writes unforced: the active channel is reopened so later
+     * writes still succeed, and the caller must report the failure.
+     *
+     * @param number the number of the segment whose channel sync tried to force
+     * @return true if the channel was closed without being forced
+     * @throws IOException the active segment could not be reopened
+     */
+    private boolean reopenInterrupted(final long number) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (closed || number != activeNumber) {
+                return false;
+            }
+            reopenActive();
+            return true;
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Merge all sealed segments into one, keeping only the newest live record of each id.
+     * Reads and writes continue while the merged segment is written. Does nothing if a
+     * compaction is already running.
+     *
+     * @throws IOException the compaction failed
+     */
+    public final void compact() throws IOException {
+        if (!compacting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            List<Segment> merged = sealed;
+            if (merged.size() < 2) {
+                return;
+            }
+            Segment newest = merged.get(merged.size() - 1);
+            long number = newest.getNumber();
+            long baseNumber = merged.get(0).getBaseNumber();
+            File temporary = new File(directory, Segment.fileName(number) + COMPACT_SUFFIX);
+            Segment compacted = writeCompacted(merged, temporary, number, baseNumber);
+
+            lock.writeLock().lock();
+            try {
+                if (closed) {
+                    Files.deleteIfExists(temporary.toPath());
+                    return;
+                }
+                Files.move(temporary.toPath(), newest.getFile().toPath(),
+                        StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                List<Segment> current = sealed;
+                List<Segment> replaced = new ArrayList<>();
+                replaced.add(compacted);
+                replaced.addAll(current.subList(merged.size(), current.size()));
+                sealed = Collections.unmodifiableList(replaced);
+            }
+            finally {
+                lock.writeLock().unlock();
+            }
+            // segments merged into the compacted segment are ignored on recovery, so order does not matter
+            for (int i = 0; i < merged.size() - 1; i++) {
+                Files.deleteIfExists(merged.get(i).getFile().toPath());
+            }
+        }
+        finally {
+            compacting.set(false);
+        }
+    }
+
+    /**
+     * @return the number of sealed segments.
+     */
+    public final int sealedSegments() {
+        return sealed.size();
+    }
+
+    /**
+     * Sync and close the store. Background work is stopped.
+     *
+     * @throws IOException the final sync failed
+     */
+    @Override
+    public final void close() throws IOException {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            drain();
+            activeChannel.force(false);
+            activeChannel.close();
+            activeReader.close();
+            if (activeIndex.isEmpty()) {
+                Files.deleteIfExists(activeFile.toPath());
+            }
+            closed = true;
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Append a record to the active segment, sealing it first if it is full.
+     *
+     * @param id the id
+     * @param sequence the sequence, or null for a tombstone
+     * @throws IOException the write failed
+     */
+    private void append(final long id, final PackedSequence sequence) throws IOException {
+        int size = Segment.recordSize(sequence == null ? Segment.TOMBSTONE : sequence.getLength());
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            if (flushedPosition + writeBuffer.position() + size > maxSegmentBytes && !activeIndex.isEmpty()) {
+                roll();
+            }
+            int offset = (int) (flushedPosition + writeBuffer.position());
+            if (size > writeBuffer.remaining()) {
+                drain();
+            }
+            if (size > writeBuffer.capacity()) {
+                appendLarge(id, sequence);
+                flushedPosition += size;
+                appended++;
+                drained = appended;
+            }
+            else {
+                int start = writeBuffer.position();
+                try {
+                    Segment.writeRecord(writeBuffer, id, sequence);
+                }
+                catch (RuntimeException e) {
+                    // a lazy sequence may fail partway through its words: drop the torn record
+                    writeBuffer.position(start);
+                    throw e;
+                }
+                appended++;
+            }
+            activeIndex.put(id, offset);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Write a record larger than the write buffer straight to the active channel, a buffer at a
+     * time, so that no array as large as the record is allocated. Called with the write lock held
+     * and the write buffer drained. On failure the bytes written lie past the flushed position,
+     * where the next record overwrites them and recovery stops at them.
+     *
+     * @param id the id
+     * @param sequence the sequence
+     * @throws IOException the write failed
+     */
+    private void appendLarge(final long id, final PackedSequence sequence) throws IOException {
+        long position = flushedPosition;
+        CRC32 crc = new CRC32();
+        try {
+            writeBuffer.putLong(id);
+            writeBuffer.putInt(sequence.getLength());
+            int words = sequence.wordCount();
+            for (int i = 0; i < words; i++) {
+                if (!writeBuffer.hasRemaining()) {
+                    crc.update(writeBuffer.array(), writeBuffer.arrayOffset(), writeBuffer.position());
+                    position += writeChunk(position);
+                }
+                writeBuffer.putInt(sequence.word(i));
+            }
+            crc.update(writeBuffer.array(), writeBuffer.arrayOffset(), writeBuffer.position());
+            if (writeBuffer.remaining() < Segment.RECORD_TRAILER_SIZE) {
+                position += writeChunk(position);
+            }
+            writeBuffer.putInt((int) crc.getValue());
+            writeChunk(position);
+        }
+        finally {
+            writeBuffer.clear();
+        }
+    }
+
+    /**
+     * Write the write buffer to the active channel at a position and clear it.
+     * Called with the write lock held.
+     *
+     * @param position file position to write at
+     * @return number of bytes written
+     * @throws IOException the write failed
+     */
+    private int writeChunk(final long position) throws IOException {
+        writeBuffer.flip();
+        int size = writeBuffer.remaining();
+        writeFully(writeBuffer, position);
+        writeBuffer.clear();
+        return size;
+    }
+
+    /**
+     * Read a record of the active segment, from the write buffer if it has not been drained.
+     * Called with the read lock held.
+     *
+     * @param offset the offset of the record
+     * @return the sequence, or null if the record is a tombstone
+     * @throws IOException the read failed
+     */
+    private Sequence readActive(final int offset) throws IOException {
+        if (offset >= flushedPosition) {
+            return Segment.decode(writeBuffer, (int) (offset - flushedPosition));
+        }
+        // read through a file rather than the channel: an interrupted channel read would close it
+        synchronized (activeReader) {
+            return Segment.decode(activeReader, offset);
+        }
+    }
+
+    /**
+     * Write the write buffer to the active channel. Called with the write lock held.
+     *
+     * @throws IOException the write failed
+     */
+    private void drain() throws IOException {
+        if (writeBuffer.position() > 0) {
+            writeBuffer.flip();
+            int size = writeBuffer.remaining();
+            try {
+                writeFully(writeBuffer, flushedPosition);
+            }
+            catch (IOException e) {
+                // keep the records buffered whatever failed, the next drain writes them again from the same position
+                writeBuffer.position(writeBuffer.limit());
+                writeBuffer.limit(writeBuffer.capacity());
+                throw e;
+            }
+            writeBuffer.clear();
+            flushedPosition += size;
+        }
+        drained = appended;
+    }
+
+    /**
+     * Seal the active segment and start a new one. Called with the write lock held.
+     *
+     * @throws IOException the segment could not be sealed
+     */
+    private void roll() throws IOException {
+        drain();
+        activeChannel.force(false);
+        long[] ids = new long[activeIndex.size()];
+        int[] offsets = new int[activeIndex.size()];
+        int i = 0;
+        for (Map.Entry<Long, Integer> entry : activeIndex.entrySet()) {
+            ids[i] = entry.getKey();
+            offsets[i] = entry.getValue();
+            i++;
+        }
+        Segment segment = Segment.seal(activeFile, activeChannel, activeNumber, activeNumber, ids, offsets);
+        activeChannel.close();
+        activeReader.close();
+        synchronized (syncMonitor) {
+            durable = Math.max(durable, drained);
+        }
+        List<Segment> replaced = new ArrayList<>(sealed);
+        replaced.add(segment);
+        sealed = Collections.unmodifiableList(replaced);
+        activeIndex.clear();
+        openActive(activeNumber + 1);
+        if (replaced.size() >= compactionThreshold) {
+            scheduleCompaction();
+        }
+    }
+
+    /**
+     * Create a new active segment.
+     *
+     * @param number the segment number
+     * @throws IOException the segment file could not be created
+     */
+    @SuppressWarnings("resource")
+    private void openActive(final long number) throws IOException {
+        activeNumber = number;
+        activeFile = new File(directory, Segment.fileName(number));
+        activeChannel = new RandomAccessFile(activeFile, "rw").getChannel();
+        activeChannel.truncate(0);
+        activeReader = new RandomAccessFile(activeFile, "r");
+        ByteBuffer header = ByteBuffer.allocate(Segment.HEADER_SIZE);
+        Segment.writeHeader(header, number, number);
+        header.flip();
+        writeFully(header, 0);
+        flushedPosition = Segment.HEADER_SIZE;
+    }
+
+    /**
+     * Write the newest live record of every id in a list of segments to a new segment.
+     *
+     * @param merged segments to merge, oldest first
+     * @param file the file to write
+     * @param number the number of the merged segment
+     * @param baseNumber the lowest segment number merged
+     * @return the merged segment
+     * @throws IOException the merged segment could not be written
+     */
+    private Segment writeCompacted(final List<Segment> merged, final File file, final long number,
+                                   final long baseNumber) throws IOException {
+        int count = merged.size();
+        int[] cursors = new int[count];
+        int capacity = 0;
+        for (Segment segment : merged) {
+            capacity += segment.size();
+        }
+        long[] ids = new long[capacity];
+        int[] offsets = new int[capacity];
+        int n = 0;
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            channel.truncate(0);
+            ByteBuffer out = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+            Segment.writeHeader(out, number, baseNumber);
+            long written = 0;
+            while (true) {
+                // k-way merge of the sorted indexes, the newest segment wins an id
+                int winner = -1;
+                long id = 0;
+                for (int s = count - 1; s >= 0; s--) {
+                    Segment segment = merged.get(s);
+                    if (cursors[s] < segment.size()) {
+                        long candidate = segment.idAt(cursors[s]);
+                        if (winner < 0 || candidate < id) {
+                            winner = s;
+                            id = candidate;
+                        }
+                    }
+                }
+                if (winner < 0) {
+                    break;
+                }
+                Segment segment = merged.get(winner);
+                int offset = segment.offsetAt(cursors[winner]);
+                for (int s = 0; s < count; s++) {
+                    if (cursors[s] < merged.get(s).size() && merged.get(s).idAt(cursors[s]) == id) {
+                        cursors[s]++;
+                    }
+                }
+                // every older record of the id is merged as well, so the tombstone can go
+                if (segment.isTombstone(offset)) {
+                    continue;
+                }
+                ByteBuffer record = segment.record(offset);
+                if (written + out.position() + record.remaining() > Integer.MAX_VALUE) {
+                    throw new IOException("Compacted segment would exceed 2GB.");
+                }
+                if (record.remaining() > out.remaining()) {
+                    out.flip();
+                    written += writeFully(channel, out, written);
+                    out.clear();
+                }
+                ids[n] = id;
+                offsets[n] = (int) (written + out.position());
+                n++;
+                if (record.remaining() > out.capacity()) {
+                    written += writeFully(channel, record, written);
+                }
+                else {
+                    out.put(record);
+                }
+            }
+            out.flip();
+            writeFully(channel, out, written);
+            channel.force(false);
+            return Segment.seal(new File(directory, Segment.fileName(number)), channel, number, baseNumber,
+                    Arrays.copyOf(ids, n), Arrays.copyOf(offsets, n));
+        }
+    }
+
+    /**
+     * Open every segment in the directory, dropping segments superseded by a compaction
+     * and a newest segment torn before its header was written.
+     *
+     * @return sealed segments, oldest first
+     * @throws IOException a segment could not be read
+     */
+    private List<Segment> recover() throws IOException {
+        List<Segment> segments = new ArrayList<>();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            String newest = null;
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(Segment.SUFFIX) && (newest == null || name.compareTo(newest) > 0)) {
+                    newest = name;
+                }
+            }
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(COMPACT_SUFFIX)) {
+                    Files.deleteIfExists(file.toPath());
+                }
+                else if (name.equals(newest) && !Segment.hasHeader(file)) {
+                    // a crash just after a roll can leave the new active segment without a complete header
+                    Files.deleteIfExists(file.toPath());
+                }
+                else if (name.endsWith(Segment.SUFFIX)) {
+                    segments.add(Segment.open(file));
+                }
+            }
+        }
+        Collections.sort(segments, new Comparator<Segment>() {
+            @Override
+            public int compare(final Segment a, final Segment b) {
+                return Long.compare(a.getNumber(), b.getNumber());
+            }
+        });
+        List<Segment> live = new ArrayList<>();
+        long covered = Long.MAX_VALUE;
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            Segment segment = segments.get(i);
+            if (segment.getNumber() >= covered) {
+                // a compaction was interrupted before deleting this segment
+                Files.deleteIfExists(segment.getFile().toPath());
+            }
+            else {
+                live.add(0, segment);
+                covered = Math.min(covered, segment.getBaseNumber());
+            }
+        }
+        return Collections.unmodifiableList(live);
+    }
+
+    /**
+     * Schedule a compaction on the background executor.
+     */
+    private void scheduleCompaction() {
+        if (compacting.get() || executor == null || executor.isShutdown()) {
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    compact();
+                }
+                catch (IOException e) {
+                    LOGGER.error("Background compaction failed for " + directory, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * @throws IOException the store has been closed
+     */
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Segment store is closed.");
+        }
+    }
+
+    /**
+     * Write a buffer to the active channel. An interrupt closes the channel, so it is reopened
+     * for later writes before the failure is reported.
+     *
+     * @param buffer source buffer
+     * @param position file position to write at
+     * @throws IOException the write failed
+     */
+    private void writeFully(final ByteBuffer buffer, final long position) throws IOException {
+        try {
+            writeFully(activeChannel, buffer, position);
+        }
+        catch (ClosedChannelException e) {
+            reopenActive();
+            throw e;
+        }
+    }
+
+    /**
+     * Reopen the active channel if an interrupt of a thread using it closed it.
+     * Called with the write lock held.
+     *
+     * @throws IOException the active segment could not be reopened
+     */
+    @SuppressWarnings("resource")
+    private void reopenActive() throws IOException {
+        if (!activeChannel.isOpen()) {
+            activeChannel = new RandomAccessFile(activeFile, "rw").getChannel();
+        }
+    }
+
+    /**
+     * Write a buffer to a channel.
+     *
+     * @param channel destination channel
+     * @param buffer source buffer
+     * @param position file position to write at
+     * @return number of bytes written
+     * @throws IOException the write failed
+     */
+    private static int writeFully(final FileChannel channel, final ByteBuffer buffer, final long position)
+            throws IOException {
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        return written;
+    }
+}
@@ -3,20 +3,46 @@ package com.happyspace.basepair;
 import exception.MalformedInputException;
 import exception.UnknownEncoding;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.regex.Matcher;
 
 /**
  * A class encapsulating an encoded representation of a sequence of base pairs.
  * Base pairs are encoded 8 per integer value for an saving of eight fold
  * in comparison to an array of integers with each integer representing a base pair.
+ *
+ * Sequences longer than one page are held in pages of PAGE_WORDS integers rather than one
+ * array, so that no array is large enough to be allocated as a humongous object by G1.
  */
-public class Sequence {
+public class Sequence implements PackedSequence {
 
     /**
-     * An array of integers encoding a sequence of base pairs.
+     * Shift from the index of a packed integer to its page.
+     */
+    protected static final int PAGE_SHIFT = 16;
+    /**
+     * Number of packed integers per page, 256KB: below half of the smallest G1 region.
+     */
+    protected static final int PAGE_WORDS = 1 << PAGE_SHIFT;
+    /**
+     * Mask from the index of a packed integer to its index within its page.
+     */
+    protected static final int PAGE_MASK = PAGE_WORDS - 1;
+    /**
+     * Number of bytes of a page, the size other arrays of this package are kept within.
+     */
+    protected static final int PAGE_BYTES = PAGE_WORDS * 4;
+
+    /**
+     * An array of integers encoding a sequence of base pairs, null when paged.
      */
     private final int[] sequenceEncoded;
 
+    /**
+     * Pages of integers encoding a sequence of base pairs, null when held in one array.
+     */
+    private final int[][] pages;
 
     /**
      * The number of base pairs.
@@ -31,6 +57,19 @@ public class Sequence {
      * @throws MalformedInputException Thrown when the string does not have an even number of elements.
      */
     public Sequence(final String sequence) throws UnknownEncoding, MalformedInputException  {
+        this(sequence, null);
+    }
+
+    /**
+     * A class that creates a memory efficient representation of a base pair sequence,
+     * encoding pages in parallel.
+     *
+     * @param sequence A string representing a sequence of base pairs.
+     * @param pool The pool pages are allocated and encoded on, or null to encode on the calling thread.
+     * @throws UnknownEncoding Thrown when the string contains a character other than A, T, C or G.
+     * @throws MalformedInputException Thrown when the string does not have an even number of elements.
+     */
+    public Sequence(final String sequence, final ForkJoinPool pool) throws UnknownEncoding, MalformedInputException  {
         if (sequence.length() % 2 != 0) {
             throw new MalformedInputException("Unexpected length: sequence should be composed of pairs.");
         }
@@ -39,7 +78,64 @@ public class Sequence {
             throw new UnknownEncoding("Unexpected encoding: sequence may only be contain A, T, C or G");
         }
         this.length = sequence.length() / 2;
-        this.sequenceEncoded = this.pack(sequence);
+        int[][] packed = pack(sequence, pool);
+        if (packed.length <= 1) {
+            this.sequenceEncoded = packed.length == 1 ? packed[0] : new int[0];
+            this.pages = null;
+        }
+        else {
+            this.sequenceEncoded = null;
+            this.pages = packed;
+        }
+    }
+
+    /**
+     * Create a sequence around pages of packed integers allocated by allocate. Protected to
+     * indicate that this constructor should only be used in the context of this package.
+     * The pages are not copied.
+     *
+     * @param pages Pages of packed integers in the layout produced by pack.
+     * @param length The number of base pairs encoded into the pages.
+     */
+    protected Sequence(final int[][] pages, final int length) {
+        if (pages.length <= 1) {
+            this.sequenceEncoded = pages.length == 1 ? pages[0] : new int[0];
+            this.pages = null;
+        }
+        else {
+            this.sequenceEncoded = null;
+            this.pages = pages;
+        }
+        this.length = length;
+    }
+
+    /**
+     * Return the number of base pairs in the sequence.
+     *
+     * @return number of base pairs.
+     */
+    @Override
+    public final int getLength() {
+        return length;
+    }
+
+    /**
+     * Return the bytes retained: this object, with two references and an int field, and the
+     * packed array or the page table and its pages.
+     *
+     * @return retained bytes.
+     */
+    @Override
+    public final long retainedBytes() {
+        long bytes = Footprint.object(2 * Footprint.REFERENCE + 4);
+        if (pages == null) {
+            return bytes + Footprint.intArray(sequenceEncoded.length);
+        }
+        bytes += Footprint.referenceArray(pages.length);
+        for (int[] page : pages) {
+            bytes += Footprint.intArray(page.length);
+        }
+        return bytes;
     }
 
     /**
@@ -48,13 +144,14 @@ public class Sequence {
      * @param position A zero based index into a sequence of base pairs.
      * @return The base pair found at the position.
      */
+    @Override
     public final BasePair get(final int position) {
         if (position < 0 || position >= length) {
             throw new IndexOutOfBoundsException("Position does not fall within the sequence.");
         }
         BasePair basePair = null;
         int segment = position / Layout.size();
-        int se = sequenceEncoded[segment];
+        int se = word(segment);
 
         int offset = position % Layout.size();
         Layout layout = Layout.getPosition(offset);
@@ -64,51 +161,182 @@ public class Sequence {
     }
 
     /**
-     * Create an array of packed integers representing a sequence of base pairs.
+     * Return the number of packed integers backing this sequence.
      *
-     * @param basePairs A string representing a sequence of base pairs.
-     * @return An array of packed integers representing the sequence of base pairs.
+     * @return number of packed integers.
+     */
+    @Override
+    public final int wordCount() {
+        if (pages == null) {
+            return sequenceEncoded.length;
+        }
+        return (pages.length - 1) * PAGE_WORDS + pages[pages.length - 1].length;
+    }
+
+    /**
+     * Return a packed integer backing this sequence.
      *
+     * @param index A zero based index of the packed integer.
+     * @return An int packed with base pair encodings.
      */
-    private int[] pack(final String basePairs)  {
-        int len = 0;
-        int[] pack = new int[len];
-        if (basePairs.length() > 0) {
-            int ls = Layout.values().length;
-            int bp = (basePairs.length() / 2);
-            if (bp > ls) {
-                len = bp / ls;
-                if (bp % ls != 0) {
-                    len++;
-                }
-            }
-            else {
-                len = 1;
+    @Override
+    public final int word(final int index) {
+        if (pages == null) {
+            return sequenceEncoded[index];
+        }
+        return pages[index >>> PAGE_SHIFT][index & PAGE_MASK];
+    }
+
+    /**
+     * Copy packed integers from an array into pages, a page at a time.
+     * Protected to indicate that this method should only be used in the context of this package.
+     *
+     * @param pages the destination pages.
+     * @param index index within the pages of the first packed integer.
+     * @param source the source array.
+     * @param offset index within the source of the first packed integer.
+     * @param count number of packed integers to copy.
+     */
+    protected static void putWords(final int[][] pages, final int index, final int[] source, final int offset,
+                                   final int count) {
+        int copied = 0;
+        while (copied < count) {
+            int to = index + copied;
+            int chunk = Math.min(count - copied, PAGE_WORDS - (to & PAGE_MASK));
+            System.arraycopy(source, offset + copied, pages[to >>> PAGE_SHIFT], to & PAGE_MASK, chunk);
+            copied += chunk;
+        }
+    }
+
+    /**
+     * Allocate pages for a number of packed integers. Every page is full except the last,
+     * which is only as long as needed.
+     *
+     * @param words number of packed integers.
+     * @return the pages.
+     */
+    protected static int[][] allocate(final int words) {
+        int[][] allocated = new int[pageCount(words)][];
+        for (int p = 0; p < allocated.length; p++) {
+            allocated[p] = new int[pageLength(words, p)];
+        }
+        return allocated;
+    }
+
+    /**
+     * Return the number of packed integers needed to hold a number of base pairs.
+     *
+     * @param length A number of base pairs.
+     * @return number of packed integers.
+     */
+    protected static int wordsFor(final int length) {
+        return (length + Layout.size() - 1) / Layout.size();
+    }
+
+    /**
+     * @param words number of packed integers.
+     * @return number of pages needed to hold them.
+     */
+    private static int pageCount(final int words) {
+        return (words + PAGE_WORDS - 1) >>> PAGE_SHIFT;
+    }
+
+    /**
+     * @param words number of packed integers.
+     * @param page a page.
+     * @return number of packed integers held by the page.
+     */
+    private static int pageLength(final int words, final int page) {
+        return Math.min(PAGE_WORDS, words - (page << PAGE_SHIFT));
+    }
+
+    /**
+     * Create pages of packed integers representing a sequence of base pairs.
+     *
+     * @param basePairs A string representing a sequence of base pairs.
+     * @param pool The pool pages are allocated and encoded on, or null to encode on the calling thread.
+     * @return Pages of packed integers representing the sequence of base pairs.
+     */
+    private static int[][] pack(final CharSequence basePairs, final ForkJoinPool pool) {
+        int words = wordsFor(basePairs.length() / 2);
+        int[][] packed = new int[pageCount(words)][];
+        if (pool == null || packed.length < 2) {
+            for (int p = 0; p < packed.length; p++) {
+                packPage(basePairs, packed, p);
             }
+        }
+        else {
+            pool.invoke(new PackTask(basePairs, packed, 0, packed.length));
+        }
+        return packed;
+    }
+
+    /**
+     * Allocate and fill one page of packed integers.
+     *
+     * @param basePairs A string representing a sequence of base pairs.
+     * @param packed the pages.
+     * @param p the page to fill.
+     */
+    private static void packPage(final CharSequence basePairs, final int[][] packed, final int p) {
+        int pairs = basePairs.length() / 2;
+        int first = p << PAGE_SHIFT;
+        int[] page = new int[pageLength(wordsFor(pairs), p)];
+        for (int w = 0; w < page.length; w++) {
+            page[w] = Util.packWord(basePairs, (first + w) * Layout.size(), pairs);
+        }
+        packed[p] = page;
+    }
+
+    /**
+     * Packs a range of pages, splitting the range until one page is left.
+     */
+    private static final class PackTask extends RecursiveAction {
 
-            pack = new int[len];
-            Layout position = Layout.BP1;
-            int p = 0;
-            LayoutList layoutList = new LayoutList();
-            for (int i = 0; i < basePairs.length(); i = i + 2) {
-                String bps = basePairs.substring(i, i + 2);
-                BasePair pair = BasePair.VALUEMAP.get(bps);
-                layoutList.put(position, pair);
-
-                if (position.isLast()) {
-                    pack[p] = Util.packInt(layoutList);
-                    layoutList = new LayoutList();
-                    p++;
-                }
-
-                position = position.next();
+        /**
+         * Serialization version.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * A string representing a sequence of base pairs.
+         */
+        private final CharSequence basePairs;
+        /**
+         * The pages.
+         */
+        private final int[][] packed;
+        /**
+         * First page of the range.
+         */
+        private final int from;
+        /**
+         * End of the range, exclusive.
+         */
+        private final int to;
+
+        /**
+         * @param basePairs a string representing a sequence of base pairs
+         * @param packed the pages
+         * @param from first page of the range
+         * @param to end of the range, exclusive
+         */
+        PackTask(final CharSequence basePairs, final int[][] packed, final int from, final int to) {
+            this.basePairs = basePairs;
+            this.packed = packed;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new PackTask(basePairs, packed, from, middle), new PackTask(basePairs, packed, middle, to));
             }
-            // remainder
-            if (layoutList.values().size() != 0) {
-             pack[p] = Util.packInt(layoutList);
+            else {
+                packPage(basePairs, packed, from);
             }
         }
-
-        return pack;
     }
 }
@@ -0,0 +1,118 @@
+package com.happyspace.basepair;
+
+/**
+ * A class containing transforms of base pair sequences that work on whole packed integers
+ * instead of decoding and re-encoding each base pair.
+ */
+public final class Transform {
+
+    /**
+     * Number of bits in a field.
+     */
+    private static final int FIELD_BITS = 4;
+
+    /**
+     * Private constructor for utility class.
+     */
+    private Transform() { }
+
+    /**
+     * Reverse the order of the base pairs of a sequence.
+     *
+     * @param sequence the sequence to reverse.
+     * @return a new sequence holding the base pairs in reverse order.
+     */
+    public static Sequence reverse(final PackedSequence sequence) {
+        return transform(sequence, null, true);
+    }
+
+    /**
+     * Substitute every base pair of a sequence.
+     *
+     * @param sequence the sequence to substitute.
+     * @param mapping the substitution.
+     * @return a new sequence holding the substituted base pairs.
+     */
+    public static Sequence substitute(final PackedSequence sequence, final PairMapping mapping) {
+        return transform(sequence, mapping, false);
+    }
+
+    /**
+     * Reverse the order of the base pairs of a sequence and substitute every base pair,
+     * for example to build the reverse complement with PairMapping.COMPLEMENT.
+     *
+     * @param sequence the sequence to transform.
+     * @param mapping the substitution.
+     * @return a new sequence holding the substituted base pairs in reverse order.
+     */
+    public static Sequence reverseSubstitute(final PackedSequence sequence, final PairMapping mapping) {
+        return transform(sequence, mapping, true);
+    }
+
+    /**
+     * Reverse the order of the fields within a packed integer.
+     *
+     * @param packed an int packed with base pair encodings.
+     * @return the int with field BP1 swapped with BP8, BP2 with BP7 and so on.
+     */
+    protected static int reverseFields(final int packed) {
+        int swapped = Integer.reverseBytes(packed);
+        return ((swapped >>> FIELD_BITS) & 0x0F0F0F0F) | ((swapped & 0x0F0F0F0F) << FIELD_BITS);
+    }
+
+    /**
+     * Substitute and optionally reverse a sequence in one pass over its packed integers.
+     *
+     * When reversing, the packed integers are visited from last to first with their fields reversed.
+     * The padding of the last integer then leads the result, so each integer is shifted down by
+     * the padding and takes its top fields from the next one.
+     *
+     * @param sequence the sequence to transform.
+     * @param mapping the substitution, or null to keep base pairs.
+     * @param reverse whether to reverse the order of the base pairs.
+     * @return a new sequence.
+     */
+    private static Sequence transform(final PackedSequence sequence, final PairMapping mapping,
+                                      final boolean reverse) {
+        int words = sequence.wordCount();
+        int[][] pages = Sequence.allocate(words);
+        if (!reverse) {
+            for (int i = 0; i < words; i++) {
+                pages[i >>> Sequence.PAGE_SHIFT][i & Sequence.PAGE_MASK] = mapping.translate(sequence.word(i));
+            }
+            return new Sequence(pages, sequence.getLength());
+        }
+
+        int shift = (words * Layout.size() - sequence.getLength()) * FIELD_BITS;
+        int next = 0;
+        if (words > 0) {
+            next = reversed(sequence, words - 1, mapping);
+        }
+        for (int i = 0; i < words; i++) {
+            int current = next;
+            next = i + 1 < words ? reversed(sequence, words - 2 - i, mapping) : 0;
+            int packed = current;
+            if (shift != 0) {
+                packed = (current >>> shift) | (next << (Integer.SIZE - shift));
+            }
+            pages[i >>> Sequence.PAGE_SHIFT][i & Sequence.PAGE_MASK] = packed;
+        }
+        return new Sequence(pages, sequence.getLength());
+    }
+
+    /**
+     * Return a packed integer of a sequence with its fields reversed and substituted.
+     *
+     * @param sequence the sequence.
+     * @param index index of the packed integer.
+     * @param mapping the substitution, or null to keep base pairs.
+     * @return the reversed packed integer.
+     */
+    private static int reversed(final PackedSequence sequence, final int index, final PairMapping mapping) {
+        int packed = sequence.word(index);
+        if (mapping != null) {
+            packed = mapping.translate(packed);
+        }
+        return reverseFields(packed);
+    }
+}
@@ -3,17 +3,53 @@ package com.happyspace.basepair;
 import exception.UnknownEncoding;
 
 import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * A class containing utility methods work on base pair encoded ints.
  */
 public final class Util {
 
+    /**
+     * Characters of a base pair, in the order used to index PAIR_ENCODINGS.
+     */
+    private static final String BASES = "ATCG";
+
+    /**
+     * Encoding of each pair of characters, indexed by the positions of both characters in BASES.
+     * Pairs not found in BasePair.VALUEMAP are encoded as padding.
+     */
+    private static final int[] PAIR_ENCODINGS = new int[BASES.length() * BASES.length()];
+
+    // build look-up
+    static {
+        for (int a = 0; a < BASES.length(); a++) {
+            for (int b = 0; b < BASES.length(); b++) {
+                String value = new String(new char[] {BASES.charAt(a), BASES.charAt(b)});
+                BasePair basePair = BasePair.VALUEMAP.get(value);
+                if (basePair != null) {
+                    PAIR_ENCODINGS[a * BASES.length() + b] = basePair.getEncoding();
+                }
+            }
+        }
+    }
+
     /**
      * Private constructor for utility class.
      */
     private Util() { }
 
+    /**
+     * Return the fork join pool shared by the parallel work of this package when no pool is given,
+     * created on first use. Its worker threads are daemons, so it is never shut down.
+     * Protected to indicate that this method should only be used in the context of this package.
+     *
+     * @return the shared pool.
+     */
+    protected static ForkJoinPool sharedPool() {
+        return SharedPool.POOL;
+    }
+
 
     /**
      * A utility method to unpack an int. Protected to indicate that this
@@ -85,4 +121,51 @@ public final class Util {
         }
         return pack;
     }
+
+    /**
+     * Return the encoding of a pair of characters, as BasePair.VALUEMAP would map them.
+     * Protected to indicate that this method should only be used in the context of this package.
+     *
+     * @param first the first character of the pair.
+     * @param second the second character of the pair.
+     * @return the encoding, or padding if the characters are not a base pair.
+     */
+    protected static int encodePair(final char first, final char second) {
+        int a = BASES.indexOf(first);
+        int b = BASES.indexOf(second);
+        if (a < 0 || b < 0) {
+            return BasePair.PADDING_ENCODING;
+        }
+        return PAIR_ENCODINGS[a * BASES.length() + b];
+    }
+
+    /**
+     * Returns a packed int holding up to eight base pairs of a string.
+     * Protected to indicate that this method should only be used in the context of this package.
+     *
+     * @param basePairs a string representing a sequence of base pairs.
+     * @param firstPair index of the first base pair to pack.
+     * @param pairs number of base pairs in the string.
+     * @return an int packed with base pair encodings, padded past the end of the string.
+     */
+    protected static int packWord(final CharSequence basePairs, final int firstPair, final int pairs) {
+        int pack = 0;
+        int end = Math.min(pairs, firstPair + Layout.size());
+        for (int i = firstPair; i < end; i++) {
+            int encoding = encodePair(basePairs.charAt(2 * i), basePairs.charAt(2 * i + 1));
+            pack = pack | (encoding << Layout.getPosition(i - firstPair).getOffset());
+        }
+        return pack;
+    }
+
+    /**
+     * Holds the shared pool, so it is only created when first used.
+     */
+    private static final class SharedPool {
+
+        /**
+         * The shared pool, using all processors.
+         */
+        static final ForkJoinPool POOL = new ForkJoinPool();
+    }
 }
@@ -0,0 +1,82 @@
+package com.happyspace.basepair;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Throughput benchmark of Aligner. Not run as a test; run the main method.
+ *
+ * Batches of queries are aligned locally against a window of a target, unbanded and banded,
+ * and throughput is printed in cell updates per second.
+ */
+public final class AlignerBenchmark {
+
+    /**
+     * Number of queries in a batch.
+     */
+    private static final int QUERIES = 64;
+    /**
+     * Number of base pairs in a query.
+     */
+    private static final int QUERY_LENGTH = 500;
+    /**
+     * Number of base pairs in the target window.
+     */
+    private static final int WINDOW_LENGTH = 20000;
+    /**
+     * Band width of the banded run.
+     */
+    private static final int BAND = 64;
+
+    /**
+     * Private constructor for benchmark class.
+     */
+    private AlignerBenchmark() { }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args unused.
+     * @throws Exception the sequences could not be created.
+     */
+    public static void main(final String[] args) throws Exception {
+        Random random = new Random(1);
+        Sequence target = new Sequence(SequenceTest.generateRandomString(random, WINDOW_LENGTH));
+        List<Sequence> queries = new ArrayList<>();
+        for (int q = 0; q < QUERIES; q++) {
+            queries.add(new Sequence(SequenceTest.generateRandomString(random, QUERY_LENGTH)));
+        }
+        ScoringMatrix matrix = new ScoringMatrix(2, -1);
+        ForkJoinPool pool = Util.sharedPool();
+        System.out.println("mode\tthreads\tcell updates/s");
+        for (int band : new int[] {Aligner.UNBANDED, BAND}) {
+            Aligner aligner = new Aligner(matrix, 3, 1, band, pool);
+            // warm up, then measure
+            run(aligner, queries, target);
+            double rate = run(aligner, queries, target);
+            String mode = band == Aligner.UNBANDED ? "local" : "local band " + band;
+            System.out.printf("%s\t%d\t%.3e%n", mode, pool.getParallelism(), rate);
+        }
+    }
+
+    /**
+     * Align a batch and time it.
+     *
+     * @param aligner the aligner.
+     * @param queries the queries.
+     * @param target the target.
+     * @return cell updates per second.
+     */
+    private static double run(final Aligner aligner, final List<Sequence> queries, final Sequence target) {
+        long start = System.nanoTime();
+        aligner.alignAll(AlignmentMode.LOCAL, queries, target, 0, target.getLength());
+        long elapsed = System.nanoTime() - start;
+        long cells = 0;
+        for (Sequence query : queries) {
+            cells += aligner.cells(query.getLength(), target.getLength());
+        }
+        return cells * 1e9 / elapsed;
+    }
+}
@@ -0,0 +1,239 @@
+package com.happyspace.basepair;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.fail;
+
+
+/**
+ * Test Aligner class.
+ */
+public class AlignerTest {
+
+    /**
+     * Score of cells outside the band in the naive alignment.
+     */
+    private static final int UNREACHABLE = Integer.MIN_VALUE / 2;
+
+    /**
+     * Scores favouring base pairs that share a base.
+     */
+    private final ScoringMatrix matrix = new ScoringMatrix(table());
+
+    /**
+     * Test global and local alignments against full matrices of every cell, unbanded and banded,
+     * with random gap penalties including gaps that cost nothing to extend.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testAlign() throws Exception {
+        Random random = new Random(33);
+        ForkJoinPool pool = Util.sharedPool();
+        for (int trial = 0; trial < 600; trial++) {
+            Sequence query = new Sequence(SequenceTest.generateRandomString(random, 1 + random.nextInt(40)));
+            Sequence target = new Sequence(SequenceTest.generateRandomString(random, 1 + random.nextInt(60)));
+            int from = random.nextInt(target.getLength());
+            int to = from + random.nextInt(target.getLength() - from + 1);
+            int band = trial % 3 == 0 ? Aligner.UNBANDED : random.nextInt(12);
+            int gapOpen = random.nextInt(7);
+            int gapExtend = trial % 2 == 0 ? 0 : random.nextInt(4);
+            Aligner aligner = new Aligner(matrix, gapOpen, gapExtend, band, pool);
+
+            int[][] local = naive(AlignmentMode.LOCAL, query, target, from, to, band, gapOpen, gapExtend);
+            Alignment alignment = aligner.align(AlignmentMode.LOCAL, query, target, from, to);
+            assertEquals(best(local), alignment.getScore());
+            if (alignment.getScore() > 0) {
+                assertEquals(alignment.getScore(), local[alignment.getQueryEnd()][alignment.getTargetEnd() - from]);
+            }
+
+            int m = query.getLength();
+            int n = to - from;
+            if (band == Aligner.UNBANDED || Math.abs(m - n) <= band) {
+                int[][] global = naive(AlignmentMode.GLOBAL, query, target, from, to, band, gapOpen, gapExtend);
+                alignment = aligner.align(AlignmentMode.GLOBAL, query, target, from, to);
+                assertEquals(global[m][n], alignment.getScore());
+                assertEquals(m, alignment.getQueryEnd());
+                assertEquals(to, alignment.getTargetEnd());
+            }
+        }
+    }
+
+    /**
+     * Test banded global alignments of lengths close enough for their ends to fall in the band,
+     * where a path along the top row past the band must not be used.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testBandEdge() throws Exception {
+        Random random = new Random(35);
+        ForkJoinPool pool = Util.sharedPool();
+        for (int trial = 0; trial < 3000; trial++) {
+            int band = random.nextInt(4);
+            int m = 1 + random.nextInt(30);
+            int n = Math.max(1, m - band + random.nextInt(2 * band + 1));
+            Sequence query = new Sequence(SequenceTest.generateRandomString(random, m));
+            Sequence target = new Sequence(SequenceTest.generateRandomString(random, n));
+            int gapOpen = 1 + random.nextInt(6);
+            int gapExtend = random.nextInt(2);
+            Aligner aligner = new Aligner(matrix, gapOpen, gapExtend, band, pool);
+
+            int[][] global = naive(AlignmentMode.GLOBAL, query, target, 0, n, band, gapOpen, gapExtend);
+            assertEquals(global[m][n], aligner.align(AlignmentMode.GLOBAL, query, target).getScore());
+        }
+    }
+
+    /**
+     * Test scores of simple alignments.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testScores() throws Exception {
+        Aligner aligner = new Aligner(new ScoringMatrix(2, -1), 3, 1);
+        Sequence query = new Sequence("AAATCGCG");
+        assertEquals(8, aligner.align(AlignmentMode.GLOBAL, query, query).getScore());
+        // one gap of one pair
+        assertEquals(6 - 4, aligner.align(AlignmentMode.GLOBAL, query, new Sequence("AAATCG")).getScore());
+
+        Sequence target = new Sequence("TTTTAAATCGTT");
+        Alignment alignment = aligner.align(AlignmentMode.LOCAL, new Sequence("ATCG"), target);
+        assertEquals(4, alignment.getScore());
+        assertEquals(2, alignment.getQueryEnd());
+        assertEquals(5, alignment.getTargetEnd());
+    }
+
+    /**
+     * Test that a global alignment ending outside the band is refused.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testOutsideBand() throws Exception {
+        Aligner aligner = new Aligner(matrix, 5, 2, 2, Util.sharedPool());
+        try {
+            aligner.align(AlignmentMode.GLOBAL, new Sequence("AAAAAA"), new Sequence("AAAAAAAAAAAA"));
+            fail("Expected the end to fall outside the band.");
+        }
+        catch (IllegalArgumentException e) {
+            assertEquals("The end of a global alignment falls outside the band.", e.getMessage());
+        }
+    }
+
+    /**
+     * Test a batch against aligning each query alone.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testAlignAll() throws Exception {
+        Random random = new Random(34);
+        Sequence target = new Sequence(SequenceTest.generateRandomString(random, 3000));
+        List<Sequence> queries = new ArrayList<>();
+        for (int q = 0; q < 25; q++) {
+            queries.add(new Sequence(SequenceTest.generateRandomString(random, 1 + random.nextInt(150))));
+        }
+        Aligner aligner = new Aligner(matrix, 5, 2, 200, Util.sharedPool());
+        List<Alignment> alignments = aligner.alignAll(AlignmentMode.LOCAL, queries, target, 100, 2900);
+
+        assertEquals(queries.size(), alignments.size());
+        for (int q = 0; q < queries.size(); q++) {
+            Alignment expected = aligner.align(AlignmentMode.LOCAL, queries.get(q), target, 100, 2900);
+            assertEquals(expected.getScore(), alignments.get(q).getScore());
+            assertEquals(expected.getQueryEnd(), alignments.get(q).getQueryEnd());
+            assertEquals(expected.getTargetEnd(), alignments.get(q).getTargetEnd());
+        }
+    }
+
+    /**
+     * Fill every cell of the Gotoh recurrences reading each base pair.
+     *
+     * @param mode global or local alignment
+     * @param query the query
+     * @param target the target
+     * @param from first position of the target window
+     * @param to end of the target window, exclusive
+     * @param band largest distance of a cell from the diagonal
+     * @param gapOpen penalty of the first base pair of a gap
+     * @param gapExtend penalty of every further base pair of a gap
+     * @return best scores of every cell, query rows by window columns
+     */
+    private int[][] naive(final AlignmentMode mode, final Sequence query, final Sequence target,
+                          final int from, final int to, final int band, final int gapOpen, final int gapExtend) {
+        boolean local = mode == AlignmentMode.LOCAL;
+        int m = query.getLength();
+        int n = to - from;
+        int open = gapOpen + gapExtend;
+        int[][] h = new int[m + 1][n + 1];
+        int[][] e = new int[m + 1][n + 1];
+        int[][] f = new int[m + 1][n + 1];
+        for (int i = 0; i <= m; i++) {
+            for (int j = 0; j <= n; j++) {
+                e[i][j] = UNREACHABLE;
+                f[i][j] = UNREACHABLE;
+                if (band != Aligner.UNBANDED && Math.abs(i - j) > band) {
+                    h[i][j] = UNREACHABLE;
+                }
+                else if (i == 0 || j == 0) {
+                    int gap = i + j;
+                    h[i][j] = local || gap == 0 ? 0 : -open - (gap - 1) * gapExtend;
+                }
+                else {
+                    e[i][j] = Math.max(e[i][j - 1] - gapExtend, h[i][j - 1] - open);
+                    f[i][j] = Math.max(f[i - 1][j] - gapExtend, h[i - 1][j] - open);
+                    int diagonal = h[i - 1][j - 1] + matrix.getScore(query.get(i - 1), target.get(from + j - 1));
+                    h[i][j] = Math.max(diagonal, Math.max(e[i][j], f[i][j]));
+                    if (local) {
+                        h[i][j] = Math.max(0, h[i][j]);
+                    }
+                }
+            }
+        }
+        return h;
+    }
+
+    /**
+     * @param h best scores of every cell
+     * @return the best score of all cells
+     */
+    private int best(final int[][] h) {
+        int best = 0;
+        for (int[] row : h) {
+            for (int score : row) {
+                best = Math.max(best, score);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return scores of 4 for identical base pairs, 1 for pairs sharing a base and -3 otherwise.
+     */
+    private static int[][] table() {
+        List<BasePair> pairs = new ArrayList<>(BasePair.BASEPAIRSET);
+        int[][] table = new int[pairs.size()][pairs.size()];
+        for (int a = 0; a < pairs.size(); a++) {
+            for (int b = 0; b < pairs.size(); b++) {
+                String x = pairs.get(a).getValue();
+                String y = pairs.get(b).getValue();
+                if (a == b) {
+                    table[a][b] = 4;
+                }
+                else if (x.indexOf(y.charAt(0)) >= 0 || x.indexOf(y.charAt(1)) >= 0) {
+                    table[a][b] = 1;
+                }
+                else {
+                    table[a][b] = -3;
+                }
+            }
+        }
+        return table;
+    }
+}
@@ -0,0 +1,118 @@
+package com.happyspace.basepair;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+
+/**
+ * Test CompressedSequence class.
+ */
+public class CompressedSequenceTest {
+
+    /**
+     * Test that every position reads back after compression, with blocks of every encoding.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testRoundTrip() throws Exception {
+        Sequence sequence = new Sequence(generateGenome(100003));
+        CompressedSequence compressed = new CompressedSequence(sequence, 64, 2);
+        assertEquals(sequence.getLength(), compressed.getLength());
+        for (int i = 0; i < sequence.getLength(); i++) {
+            assertEquals(sequence.get(i), compressed.get(i));
+        }
+        // reverse order evicts blocks from the cache on every block change
+        for (int i = sequence.getLength() - 1; i >= 0; i -= 37) {
+            assertEquals(sequence.get(i), compressed.get(i));
+        }
+        Sequence decompressed = compressed.toSequence();
+        for (int i = 0; i < sequence.getLength(); i++) {
+            assertEquals(sequence.get(i), decompressed.get(i));
+        }
+    }
+
+    /**
+     * Test blocks of one packed integer, too small to compress, which are stored raw.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testRaw() throws Exception {
+        Sequence sequence = new Sequence("AAACAGGGTCTGCGAATTCC");
+        CompressedSequence compressed = new CompressedSequence(sequence, 1, 1);
+        // one byte for the encoding and four for the packed integer per block
+        assertEquals(sequence.wordCount() * (1 + 4), compressed.getCompressedBytes());
+        for (int i = 0; i < sequence.getLength(); i++) {
+            assertEquals(sequence.get(i), compressed.get(i));
+        }
+    }
+
+    /**
+     * Test that random base pairs, with no runs, shrink by entropy coding.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testEntropy() throws Exception {
+        Sequence sequence = new Sequence(SequenceTest.generateRandomString(new Random(3), 80000));
+        CompressedSequence compressed = new CompressedSequence(sequence);
+        assertTrue(compressed.getCompressedBytes() < sequence.wordCount() * 4 * 0.9);
+        for (int i = 0; i < sequence.getLength(); i += 7) {
+            assertEquals(sequence.get(i), compressed.get(i));
+        }
+    }
+
+    /**
+     * Test that low complexity regions reduce the retained memory.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testMemoryReduction() throws Exception {
+        Sequence sequence = new Sequence(generateGenome(500000));
+        CompressedSequence compressed = new CompressedSequence(sequence);
+        compressed.get(0);
+        assertTrue(compressed.retainedBytes() < sequence.retainedBytes() / 2);
+    }
+
+    /**
+     * Create a genome like string: random regions separated by long runs and tandem repeats.
+     *
+     * @param length Number of base pairs to encode.
+     * @return String representation of a sequence of base pairs.
+     */
+    private String generateGenome(final int length) {
+        Random random = new Random(length);
+        List<BasePair> pairs = new ArrayList<>(BasePair.BASEPAIRSET);
+        StringBuilder sb = new StringBuilder();
+        int written = 0;
+        while (written < length) {
+            int region = Math.min(length - written, 1000 + random.nextInt(20000));
+            int kind = random.nextInt(4);
+            String repeat = pairs.get(random.nextInt(pairs.size())).getValue()
+                    + pairs.get(random.nextInt(pairs.size())).getValue();
+            if (kind == 0) {
+                sb.append(SequenceTest.generateRandomString(random, region));
+            }
+            else if (kind == 1) {
+                for (int i = 0; i < region; i++) {
+                    sb.append("AA");
+                }
+            }
+            else {
+                for (int i = 0; i < region; i++) {
+                    sb.append(repeat, (i % 2) * 2, (i % 2) * 2 + 2);
+                }
+            }
+            written += region;
+        }
+        return sb.toString();
+    }
+}
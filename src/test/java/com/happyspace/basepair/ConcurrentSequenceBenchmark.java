@@ -0,0 +1,94 @@
+package com.happyspace.basepair;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Contention benchmark of ConcurrentSequence. Not run as a test; run the main method.
+ *
+ * For each thread count, threads update either fields of the same few packed integers
+ * (every update contends with other threads) or positions spread over the whole sequence.
+ * Throughput is printed in updates per second.
+ */
+public final class ConcurrentSequenceBenchmark {
+
+    /**
+     * Updates made by each thread per measurement.
+     */
+    private static final int UPDATES = 2000000;
+    /**
+     * Number of base pairs in the spread sequence.
+     */
+    private static final int SPREAD_LENGTH = 1 << 24;
+
+    /**
+     * Private constructor for benchmark class.
+     */
+    private ConcurrentSequenceBenchmark() { }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args unused.
+     * @throws Exception the benchmark was interrupted.
+     */
+    public static void main(final String[] args) throws Exception {
+        int processors = Runtime.getRuntime().availableProcessors();
+        System.out.println("threads\tcontended updates/s\tspread updates/s");
+        for (int threads = 1; threads <= processors; threads *= 2) {
+            // warm up, then measure
+            run(threads, true);
+            run(threads, false);
+            double contended = run(threads, true);
+            double spread = run(threads, false);
+            System.out.println(String.format("%d\t%,.0f\t%,.0f", threads, contended, spread));
+        }
+    }
+
+    /**
+     * Run one measurement.
+     *
+     * @param threads number of threads.
+     * @param contended whether threads share the same packed integers.
+     * @return updates per second over all threads.
+     * @throws Exception the measurement was interrupted.
+     */
+    private static double run(final int threads, final boolean contended) throws Exception {
+        final ConcurrentSequence sequence = new ConcurrentSequence(contended ? Layout.size() * 2 : SPREAD_LENGTH);
+        final BasePair[] pairs = BasePair.BASEPAIRSET.toArray(new BasePair[0]);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                    int length = sequence.getLength();
+                    // more threads than contended positions share them rather than running off the end
+                    int position = seed % length;
+                    for (int i = 0; i < UPDATES; i++) {
+                        sequence.set(position, pairs[i % pairs.length]);
+                        position = contended ? (position + threads) % length
+                                : (position * 1103515245 + 12345) & (length - 1);
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+        return (double) threads * UPDATES / (elapsed / 1e9);
+    }
+}
@@ -0,0 +1,149 @@
+package com.happyspace.basepair;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+
+/**
+ * Test ConcurrentSequence class.
+ */
+public class ConcurrentSequenceTest {
+
+    /**
+     * Test set, compare and set and snapshot from one thread.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testSetAndSnapshot() throws Exception {
+        ConcurrentSequence sequence = new ConcurrentSequence(new Sequence("AAACAGGGAAACAGGGCG"));
+        sequence.set(1, BasePair.TT);
+        assertTrue(sequence.compareAndSet(8, BasePair.CG, BasePair.TC));
+        assertFalse(sequence.compareAndSet(0, BasePair.CG, BasePair.TC));
+
+        Sequence snapshot = sequence.snapshot();
+        sequence.set(0, BasePair.GG);
+        assertEquals(BasePair.AA, snapshot.get(0));
+        assertEquals(BasePair.TT, snapshot.get(1));
+        assertEquals(BasePair.TC, snapshot.get(8));
+        assertEquals(BasePair.GG, sequence.get(0));
+
+        ConcurrentSequence empty = new ConcurrentSequence(3);
+        assertNull(empty.get(2));
+        assertTrue(empty.compareAndSet(2, null, BasePair.AG));
+        assertEquals(BasePair.AG, empty.get(2));
+    }
+
+    /**
+     * Test a sequence spanning several pages, with updates on both sides of a page boundary.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testPages() throws Exception {
+        int boundary = Sequence.PAGE_WORDS * Layout.size();
+        int length = 2 * boundary + 5;
+        ConcurrentSequence sequence = new ConcurrentSequence(length);
+        sequence.set(boundary - 1, BasePair.CG);
+        sequence.set(boundary, BasePair.TG);
+        assertTrue(sequence.compareAndSet(length - 1, null, BasePair.AT));
+
+        Sequence snapshot = sequence.snapshot();
+        assertEquals(length, snapshot.getLength());
+        assertEquals(BasePair.CG, snapshot.get(boundary - 1));
+        assertEquals(BasePair.TG, snapshot.get(boundary));
+        assertEquals(BasePair.AT, snapshot.get(length - 1));
+        assertNull(snapshot.get(boundary + 1));
+
+        ConcurrentSequence copy = new ConcurrentSequence(snapshot);
+        assertEquals(BasePair.TG, copy.get(boundary));
+        assertEquals(BasePair.AT, copy.get(length - 1));
+    }
+
+    /**
+     * Test that threads updating different fields of the same packed integers never lose a write.
+     * Each of eight threads owns one field of every integer and writes it over and over.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testNoLostWrites() throws Exception {
+        final int words = 4;
+        final int rounds = 20000;
+        final ConcurrentSequence sequence = new ConcurrentSequence(words * Layout.size());
+        final List<BasePair> pairs = new ArrayList<>(BasePair.BASEPAIRSET);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < Layout.size(); t++) {
+            final int field = t;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int r = 0; r < rounds; r++) {
+                        for (int w = 0; w < words; w++) {
+                            sequence.set(w * Layout.size() + field, pairs.get((r + field) % pairs.size()));
+                        }
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int w = 0; w < words; w++) {
+            for (int field = 0; field < Layout.size(); field++) {
+                BasePair last = pairs.get((rounds - 1 + field) % pairs.size());
+                assertEquals(last, sequence.get(w * Layout.size() + field));
+            }
+        }
+    }
+
+    /**
+     * Test that compare and set lets exactly one of many racing threads claim a position.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testCompareAndSetClaims() throws Exception {
+        final ConcurrentSequence sequence = new ConcurrentSequence(64);
+        final int[] claims = new int[1];
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int p = 0; p < 64; p++) {
+                        if (sequence.compareAndSet(p, null, BasePair.CG)) {
+                            synchronized (claims) {
+                                claims[0]++;
+                            }
+                        }
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(64, claims[0]);
+    }
+}
@@ -0,0 +1,110 @@
+package com.happyspace.basepair;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+
+
+/**
+ * Test DistanceEngine class and DistanceMatrix class.
+ */
+public class DistanceEngineTest {
+
+    /**
+     * Directory for mapped matrices.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test distances against a position by position comparison, with tiles smaller than the collection.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testCompute() throws Exception {
+        List<Sequence> sequences = generate(45, 101);
+        DistanceMatrix matrix = DistanceMatrix.heap(sequences.size());
+        new DistanceEngine(Util.sharedPool(), 8).compute(sequences, DistanceEngine.NO_THRESHOLD, matrix);
+
+        for (int i = 0; i < sequences.size(); i++) {
+            for (int j = 0; j < sequences.size(); j++) {
+                assertEquals(naive(sequences.get(i), sequences.get(j)), matrix.get(i, j));
+            }
+        }
+    }
+
+    /**
+     * Test that distances above the threshold are recorded as threshold + 1.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testThreshold() throws Exception {
+        List<Sequence> sequences = generate(20, 1000);
+        int threshold = 800;
+        File file = folder.newFile("matrix");
+        DistanceMatrix matrix = DistanceMatrix.mapped(sequences.size(), file);
+        new DistanceEngine().compute(sequences, threshold, matrix);
+
+        for (int i = 0; i < sequences.size(); i++) {
+            for (int j = i + 1; j < sequences.size(); j++) {
+                int expected = naive(sequences.get(i), sequences.get(j));
+                assertEquals(Math.min(expected, threshold + 1), matrix.get(j, i));
+            }
+        }
+    }
+
+    /**
+     * Test counting mismatched fields of an exclusive or.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testMismatches() throws Exception {
+        assertEquals(0, DistanceEngine.mismatches(0));
+        assertEquals(8, DistanceEngine.mismatches(0x88888888));
+        assertEquals(3, DistanceEngine.mismatches(0x10200F00));
+    }
+
+    /**
+     * Count mismatched positions by reading each base pair.
+     *
+     * @param a a sequence
+     * @param b a sequence of the same length
+     * @return number of positions holding different base pairs
+     */
+    private int naive(final Sequence a, final Sequence b) {
+        int distance = 0;
+        for (int i = 0; i < a.getLength(); i++) {
+            if (a.get(i) != b.get(i)) {
+                distance++;
+            }
+        }
+        return distance;
+    }
+
+    /**
+     * Create random sequences of equal length.
+     *
+     * @param count number of sequences
+     * @param length number of base pairs
+     * @return the sequences
+     * @throws Exception the sequences could not be created
+     */
+    private List<Sequence> generate(final int count, final int length) throws Exception {
+        Random random = new Random(count);
+        List<Sequence> sequences = new ArrayList<>();
+        for (int s = 0; s < count; s++) {
+            sequences.add(new Sequence(SequenceTest.generateRandomString(random, length)));
+        }
+        return sequences;
+    }
+}
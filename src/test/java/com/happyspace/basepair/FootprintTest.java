@@ -0,0 +1,189 @@
+package com.happyspace.basepair;
+
+import org.junit.Test;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+
+/**
+ * Test the memory footprint of sequences against the layout measured by JOL.
+ * Ceilings are in bytes per base pair; a regression in the representation fails these tests.
+ */
+public class FootprintTest {
+
+    /**
+     * Ceiling for a sequence of eight base pairs, dominated by headers. Six bytes per pair with
+     * compressed pointers, eight with uncompressed pointers or 16 byte alignment.
+     */
+    private static final double SHORT_CEILING = 8.0;
+    /**
+     * Ceiling for a sequence of ten thousand base pairs.
+     */
+    private static final double MEDIUM_CEILING = 0.51;
+    /**
+     * Ceiling for a sequence of fifty million base pairs, half a byte per pair.
+     */
+    private static final double HUGE_CEILING = 0.5001;
+    /**
+     * Size at which G1 allocates an object as humongous with 1MB regions.
+     */
+    private static final long HUMONGOUS_THRESHOLD = 512 * 1024;
+
+    /**
+     * Test a short sequence.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testShortSequence() throws Exception {
+        assertFootprint(new Sequence("AAACAGGGAAACAGGG"), SHORT_CEILING);
+    }
+
+    /**
+     * Test a medium sequence.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testMediumSequence() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            sb.append("AC");
+        }
+        assertFootprint(new Sequence(sb.toString()), MEDIUM_CEILING);
+    }
+
+    /**
+     * Test a huge sequence. The content does not change the footprint, so it is left as padding.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testHugeSequence() throws Exception {
+        int length = 50000000;
+        assertFootprint(new Sequence(Sequence.allocate(Sequence.wordsFor(length)), length), HUGE_CEILING);
+    }
+
+    /**
+     * Test that no object of a huge sequence, plain or compressed, is humongous for G1 with its smallest region size,
+     * 1MB, where objects of half a region or more are humongous.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testNoHumongousObjects() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2500000; i++) {
+            sb.append("AAACAGGG");
+        }
+        Sequence sequence = new Sequence(sb.toString());
+        GraphLayout layout = GraphLayout.parseInstance(sequence);
+        for (long address : layout.addresses()) {
+            assertTrue(layout.record(address).size() < HUMONGOUS_THRESHOLD);
+        }
+        assertEquals(layout.totalSize(), sequence.retainedBytes());
+
+        // entropy coded at a quarter of a byte per pair, so its blocks fill many chunks
+        CompressedSequence compressed = new CompressedSequence(sequence);
+        assertTrue(compressed.getCompressedBytes() > 4 * Sequence.PAGE_BYTES);
+        layout = GraphLayout.parseInstance(compressed);
+        for (long address : layout.addresses()) {
+            assertTrue(layout.record(address).size() < HUMONGOUS_THRESHOLD);
+        }
+        assertEquals(layout.totalSize(), compressed.retainedBytes());
+    }
+
+    /**
+     * Test the accounting of a compressed sequence with a partly filled cache.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testCompressedSequence() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            sb.append(i % 1000 < 900 ? "AA" : "CG");
+        }
+        CompressedSequence compressed = new CompressedSequence(new Sequence(sb.toString()));
+        assertEquals(GraphLayout.parseInstance(compressed).totalSize(), compressed.retainedBytes());
+        compressed.get(0);
+        compressed.get(99999);
+        assertEquals(GraphLayout.parseInstance(compressed).totalSize(), compressed.retainedBytes());
+    }
+
+    /**
+     * Test the accounting of a concurrent sequence.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testConcurrentSequence() throws Exception {
+        ConcurrentSequence sequence = new ConcurrentSequence(10000);
+        assertEquals(GraphLayout.parseInstance(sequence).totalSize(), sequence.retainedBytes());
+
+        ConcurrentSequence paged = new ConcurrentSequence(20000000);
+        GraphLayout layout = GraphLayout.parseInstance(paged);
+        for (long address : layout.addresses()) {
+            assertTrue(layout.record(address).size() < HUMONGOUS_THRESHOLD);
+        }
+        assertEquals(layout.totalSize(), paged.retainedBytes());
+    }
+
+    /**
+     * Test the accounting of a lazy sequence before and after blocks are encoded.
+     * The source belongs to the caller, so it is left out of the accounting.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testLazySequence() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            sb.append("AAACAGGG");
+        }
+        String source = sb.toString();
+        long sourceBytes = GraphLayout.parseInstance(source).totalSize();
+        LazySequence lazy = new LazySequence(source);
+        assertEquals(GraphLayout.parseInstance(lazy).totalSize() - sourceBytes, lazy.retainedBytes());
+        lazy.get(0);
+        lazy.get(lazy.getLength() - 1);
+        assertEquals(GraphLayout.parseInstance(lazy).totalSize() - sourceBytes, lazy.retainedBytes());
+    }
+
+    /**
+     * Test the aggregate report over a collection of sequences.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testReport() throws Exception {
+        List<Sequence> sequences = new ArrayList<>();
+        sequences.add(new Sequence("AA"));
+        sequences.add(new Sequence("AAACAGGGAAACAGGGCG"));
+        sequences.add(new Sequence(Sequence.allocate(1000), 8000));
+        FootprintReport report = new FootprintReport(sequences);
+
+        assertEquals(3, report.getSequences());
+        assertEquals(8010, report.getBasePairs());
+        assertEquals(GraphLayout.parseInstance(sequences.toArray()).totalSize(), report.getRetainedBytes());
+        assertEquals(sequences.get(2).retainedBytes(), report.getLargestBytes());
+    }
+
+    /**
+     * Assert that the accounted footprint matches JOL and stays under a ceiling.
+     *
+     * @param sequence the sequence to measure
+     * @param ceiling bytes per base pair ceiling
+     */
+    private void assertFootprint(final BasePairSequence sequence, final double ceiling) {
+        long measured = GraphLayout.parseInstance(sequence).totalSize();
+        assertEquals(measured, sequence.retainedBytes());
+        double bytesPerPair = (double) measured / sequence.getLength();
+        assertTrue(bytesPerPair + " bytes per pair exceeds " + ceiling, bytesPerPair <= ceiling);
+    }
+}
@@ -0,0 +1,229 @@
+package com.happyspace.basepair;
+
+import exception.MalformedInputException;
+import exception.UnknownEncoding;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+
+/**
+ * Test LazySequence class.
+ */
+public class LazySequenceTest {
+
+    /**
+     * Directory for mapped files.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test that reads match an eagerly encoded sequence and only encode the blocks they touch.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testGet() throws Exception {
+        String pairs = SequenceTest.generateRandomString(new Random(34), 1000);
+        Sequence sequence = new Sequence(pairs);
+        LazySequence lazy = new LazySequence(pairs, 4);
+
+        assertEquals(sequence.getLength(), lazy.getLength());
+        assertEquals(0, lazy.getEncodedBlocks());
+        // block of 32 base pairs: positions 40 to 63 share block 1
+        assertEquals(sequence.get(40), lazy.get(40));
+        assertEquals(sequence.get(63), lazy.get(63));
+        assertEquals(1, lazy.getEncodedBlocks());
+        assertEquals(sequence.get(999), lazy.get(999));
+        assertEquals(2, lazy.getEncodedBlocks());
+
+        for (int i = 0; i < sequence.getLength(); i++) {
+            assertEquals(sequence.get(i), lazy.get(i));
+        }
+        assertEquals(32, lazy.getEncodedBlocks());
+        Sequence copy = lazy.toSequence();
+        for (int i = 0; i < sequence.getLength(); i++) {
+            assertEquals(sequence.get(i), copy.get(i));
+        }
+    }
+
+    /**
+     * Test that an invalid character is reported when its block is first read, and not before.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testInvalidBlock() throws Exception {
+        StringBuilder pairs = new StringBuilder(SequenceTest.generateRandomString(new Random(35), 100));
+        pairs.setCharAt(141, 'X');
+        LazySequence lazy = new LazySequence(pairs, 2);
+
+        assertEquals(BasePair.valueOf(pairs.substring(0, 2)), lazy.get(0));
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                lazy.get(64);
+                fail("Expected the block holding character 141 to be invalid.");
+            }
+            catch (IllegalStateException e) {
+                assertTrue(e.getCause() instanceof UnknownEncoding);
+            }
+        }
+        assertEquals(BasePair.valueOf(pairs.substring(160, 162)), lazy.get(80));
+    }
+
+    /**
+     * Test that a block whose source fails to read is released, so a later read can encode and publish it.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testFailedRead() throws Exception {
+        final String pairs = SequenceTest.generateRandomString(new Random(38), 100);
+        final boolean[] broken = {true};
+        CharSequence flaky = new CharSequence() {
+            @Override
+            public int length() {
+                return pairs.length();
+            }
+
+            @Override
+            public char charAt(final int index) {
+                if (broken[0]) {
+                    throw new IndexOutOfBoundsException("Source is not readable yet.");
+                }
+                return pairs.charAt(index);
+            }
+
+            @Override
+            public CharSequence subSequence(final int start, final int end) {
+                return pairs.subSequence(start, end);
+            }
+        };
+        LazySequence lazy = new LazySequence(flaky, 2);
+        try {
+            lazy.get(0);
+            fail("Expected the source to fail.");
+        }
+        catch (IndexOutOfBoundsException e) {
+            assertEquals("Source is not readable yet.", e.getMessage());
+        }
+        broken[0] = false;
+        assertEquals(BasePair.valueOf(pairs.substring(0, 2)), lazy.get(0));
+        assertEquals(1, lazy.getEncodedBlocks());
+    }
+
+    /**
+     * Test that an odd number of characters is refused on construction.
+     *
+     * @throws Exception Junit
+     */
+    @Test(expected = MalformedInputException.class)
+    public final void testMalformed() throws Exception {
+        new LazySequence("ATC");
+    }
+
+    /**
+     * Test readers racing to encode the same blocks.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testConcurrentReads() throws Exception {
+        String pairs = SequenceTest.generateRandomString(new Random(36), 50000);
+        final Sequence sequence = new Sequence(pairs);
+        final LazySequence lazy = new LazySequence(pairs, 16);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        int mismatches = 0;
+                        for (int i = 0; i < sequence.getLength(); i++) {
+                            if (sequence.get(i) != lazy.get(i)) {
+                                mismatches++;
+                            }
+                        }
+                        return mismatches;
+                    }
+                }));
+            }
+            for (Future<Integer> future : futures) {
+                assertEquals(0, future.get().intValue());
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Test that consumers of packed integers read a lazy sequence as they read an eager one,
+     * and only encode the blocks they touch.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testConsumers() throws Exception {
+        Random random = new Random(39);
+        String pairs = SequenceTest.generateRandomString(random, 100000);
+        Sequence sequence = new Sequence(pairs);
+        LazySequence lazy = new LazySequence(pairs);
+        Sequence query = new Sequence(SequenceTest.generateRandomString(random, 200));
+
+        // positions 50000 to 50500 lie in block 6 of 8192 base pairs
+        Aligner aligner = new Aligner(new ScoringMatrix(2, -1), 3, 1);
+        Alignment expected = aligner.align(AlignmentMode.LOCAL, query, sequence, 50000, 50500);
+        Alignment actual = aligner.align(AlignmentMode.LOCAL, query, lazy, 50000, 50500);
+        assertEquals(expected.getScore(), actual.getScore());
+        assertEquals(expected.getTargetEnd(), actual.getTargetEnd());
+        assertEquals(1, lazy.getEncodedBlocks());
+
+        assertEquals(0, DistanceEngine.distance(sequence, lazy, DistanceEngine.NO_THRESHOLD));
+        Sequence reversed = Transform.reverse(lazy);
+        for (int i = 0; i < sequence.getLength(); i++) {
+            assertEquals(sequence.get(i), reversed.get(sequence.getLength() - 1 - i));
+        }
+    }
+
+    /**
+     * Test a sequence over a mapped file.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testMap() throws Exception {
+        String pairs = SequenceTest.generateRandomString(new Random(37), 20000);
+        File file = folder.newFile("pairs");
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(pairs.getBytes(StandardCharsets.US_ASCII));
+        }
+        Sequence sequence = new Sequence(pairs);
+        LazySequence lazy = LazySequence.map(file);
+
+        assertEquals(sequence.getLength(), lazy.getLength());
+        assertEquals(sequence.get(12345), lazy.get(12345));
+        assertEquals(1, lazy.getEncodedBlocks());
+        for (int i = 0; i < sequence.getLength(); i++) {
+            assertEquals(sequence.get(i), lazy.get(i));
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.happyspace.basepair;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.channels.ClosedByInterruptException;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.fail;
+
+
+/**
+ * Test SegmentStore class.
+ */
+public class SegmentStoreTest {
+
+    /**
+     * Directory for the segment files of a test.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test that a stored sequence is read back from the write buffer and after a sync.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testPutGet() throws Exception {
+        try (SegmentStore store = new SegmentStore(folder.getRoot())) {
+            Sequence sequence = new Sequence("AAACAGGGAAACAGGGCG");
+            store.put(1, sequence);
+            assertSameSequence(sequence, store.get(1));
+            store.sync();
+            assertSameSequence(sequence, store.get(1));
+            assertNull(store.get(2));
+        }
+    }
+
+    /**
+     * Test that a tombstone hides a sequence in an older segment.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testDelete() throws Exception {
+        File root = folder.getRoot();
+        try (SegmentStore store = new SegmentStore(root, 1024, 0, 100)) {
+            store.put(7, new Sequence("CGCG"));
+            for (int i = 0; i < 100; i++) {
+                store.put(100 + i, new Sequence("AAACAGGG"));
+            }
+            store.delete(7);
+            assertNull(store.get(7));
+        }
+        try (SegmentStore store = new SegmentStore(root, 1024, 0, 100)) {
+            assertNull(store.get(7));
+            assertEquals(BasePair.AA, store.get(150).get(0));
+        }
+    }
+
+    /**
+     * Test that sequences survive reopening the store, sealing and compaction.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testReopenAndCompact() throws Exception {
+        File root = folder.getRoot();
+        String pairs = "AATTCCGGAGTCCGTG";
+        try (SegmentStore store = new SegmentStore(root, 4096, 0, 1000)) {
+            for (int i = 0; i < 2000; i++) {
+                store.put(i % 500, new Sequence(pairs.substring(0, 2 + 2 * (i % 8))));
+            }
+            for (int i = 0; i < 500; i += 2) {
+                store.delete(i);
+            }
+            assertEquals(true, store.sealedSegments() > 1);
+        }
+        try (SegmentStore store = new SegmentStore(root, 4096, 0, 1000)) {
+            store.compact();
+            assertEquals(1, store.sealedSegments());
+            for (int i = 0; i < 500; i++) {
+                Sequence sequence = store.get(i);
+                if (i % 2 == 0) {
+                    assertNull(sequence);
+                }
+                else {
+                    int last = 1500 + i;
+                    assertSameSequence(new Sequence(pairs.substring(0, 2 + 2 * (last % 8))), sequence);
+                }
+            }
+        }
+        try (SegmentStore store = new SegmentStore(root, 4096, 0, 1000)) {
+            assertEquals(1, store.sealedSegments());
+            assertNull(store.get(0));
+            assertEquals(BasePair.AA, store.get(1).get(0));
+        }
+    }
+
+    /**
+     * Test that reopening the store truncates a torn or corrupt tail of the newest segment
+     * and keeps every record before it.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testRecoverTail() throws Exception {
+        File root = folder.getRoot();
+        Sequence first = new Sequence("AAACAGGGAAACAGGGCG");
+        Sequence second = new Sequence("CGCGTTAA");
+        try (SegmentStore store = new SegmentStore(root, 1 << 20, 0, 100)) {
+            store.put(1, first);
+            store.put(2, second);
+        }
+        File newest = newestSegment(root);
+        long size = newest.length();
+
+        // a torn record whose length would overflow the record size
+        try (RandomAccessFile raf = new RandomAccessFile(newest, "rw")) {
+            raf.seek(size);
+            raf.writeLong(3);
+            raf.writeInt(0x7ffffffc);
+            raf.writeLong(0);
+        }
+        try (SegmentStore store = new SegmentStore(root, 1 << 20, 0, 100)) {
+            assertSameSequence(first, store.get(1));
+            assertSameSequence(second, store.get(2));
+            assertNull(store.get(3));
+        }
+        assertEquals(size, newest.length());
+
+        // a corrupt checksum on the last record
+        try (RandomAccessFile raf = new RandomAccessFile(newest, "rw")) {
+            raf.seek(size - 1);
+            int last = raf.read();
+            raf.seek(size - 1);
+            raf.write(last ^ 0xFF);
+        }
+        try (SegmentStore store = new SegmentStore(root, 1 << 20, 0, 100)) {
+            assertSameSequence(first, store.get(1));
+            assertNull(store.get(2));
+        }
+        assertEquals(true, newest.length() < size);
+    }
+
+    /**
+     * Test that reopening the store drops a newest segment torn before its header was complete,
+     * as a crash just after sealing a segment can leave, and keeps the sealed segments.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testRecoverHeader() throws Exception {
+        File root = folder.getRoot();
+        Sequence first = new Sequence("AAACAGGGAAACAGGGCG");
+        try (SegmentStore store = new SegmentStore(root, 1 << 20, 0, 100)) {
+            store.put(1, first);
+        }
+        String sealed = newestSegment(root).getName();
+        for (int torn : new int[] {0, Segment.HEADER_SIZE - 4}) {
+            File newest = new File(root, Segment.fileName(Long.parseLong(sealed.substring(0, 16)) + 1));
+            try (RandomAccessFile raf = new RandomAccessFile(newest, "rw")) {
+                raf.setLength(torn);
+            }
+            try (SegmentStore store = new SegmentStore(root, 1 << 20, 0, 100)) {
+                assertSameSequence(first, store.get(1));
+            }
+            assertEquals(sealed, newestSegment(root).getName());
+        }
+    }
+
+    /**
+     * Test that an interrupted sync reports the failure and leaves the store usable,
+     * and that reads of drained records are not disturbed by an interrupt.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testInterruptedSync() throws Exception {
+        File root = folder.getRoot();
+        Sequence first = new Sequence("AAACAGGGAAACAGGGCG");
+        Sequence second = new Sequence("CGCGTTAA");
+        StringBuilder pairs = new StringBuilder();
+        while (pairs.length() < 3 << 20) {
+            pairs.append("ATCGGCTA");
+        }
+        // larger than the write buffer, so it is written straight to the channel
+        Sequence large = new Sequence(pairs.toString());
+        try (SegmentStore store = new SegmentStore(root, Integer.MAX_VALUE, 0, 100)) {
+            // interrupted while draining the write buffer
+            store.put(1, first);
+            interruptedSync(store);
+            // interrupted while forcing the channel
+            store.put(3, large);
+            interruptedSync(store);
+            assertSameSequence(large, store.get(3));
+
+            store.put(2, second);
+            store.sync();
+            Thread.currentThread().interrupt();
+            try {
+                assertSameSequence(first, store.get(1));
+            }
+            finally {
+                assertEquals(true, Thread.interrupted());
+            }
+            assertSameSequence(second, store.get(2));
+        }
+        try (SegmentStore store = new SegmentStore(root, 1 << 20, 0, 100)) {
+            assertSameSequence(first, store.get(1));
+            assertSameSequence(second, store.get(2));
+            assertSameSequence(large, store.get(3));
+        }
+    }
+
+    /**
+     * Test that a sequence failing partway through its packed integers leaves no torn record
+     * behind, so the records written after it survive reopening the store.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testFailedPut() throws Exception {
+        File root = folder.getRoot();
+        Sequence first = new Sequence("AAACAGGGAAACAGGGCG");
+        Sequence third = new Sequence("CGCGTTAA");
+        StringBuilder pairs = new StringBuilder("AATTCCGGAGTCCGTGAATTCCGGAGTCCGTG");
+        pairs.setCharAt(20, 'X');
+        LazySequence invalid = new LazySequence(pairs, 1);
+        // larger than the write buffer, so it fails after part of it reached the segment file
+        StringBuilder largePairs = new StringBuilder();
+        while (largePairs.length() < 3 << 20) {
+            largePairs.append("ATCGGCTA");
+        }
+        largePairs.setCharAt(largePairs.length() - 2, 'X');
+        LazySequence invalidLarge = new LazySequence(largePairs);
+        try (SegmentStore store = new SegmentStore(root, Integer.MAX_VALUE, 0, 100)) {
+            store.put(1, first);
+            for (LazySequence sequence : new LazySequence[] {invalid, invalidLarge}) {
+                try {
+                    store.put(2, sequence);
+                    fail("Expected the invalid block to fail.");
+                }
+                catch (IllegalStateException e) {
+                    assertNull(store.get(2));
+                }
+            }
+            store.put(3, third);
+            store.sync();
+            assertSameSequence(third, store.get(3));
+        }
+        try (SegmentStore store = new SegmentStore(root, Integer.MAX_VALUE, 0, 100)) {
+            assertSameSequence(first, store.get(1));
+            assertNull(store.get(2));
+            assertSameSequence(third, store.get(3));
+        }
+    }
+
+    /**
+     * Sync with the current thread interrupted and expect the sync to report it.
+     *
+     * @param store the store
+     * @throws Exception Junit
+     */
+    private void interruptedSync(final SegmentStore store) throws Exception {
+        Thread.currentThread().interrupt();
+        try {
+            store.sync();
+            fail("Expected the interrupted sync to fail.");
+        }
+        catch (ClosedByInterruptException e) {
+            assertEquals(true, Thread.interrupted());
+        }
+    }
+
+    /**
+     * @param root directory of a store
+     * @return the segment file with the highest number
+     */
+    private File newestSegment(final File root) {
+        File newest = null;
+        for (File file : root.listFiles()) {
+            String name = file.getName();
+            if (name.endsWith(".seg") && (newest == null || name.compareTo(newest.getName()) > 0)) {
+                newest = file;
+            }
+        }
+        return newest;
+    }
+
+    /**
+     * Assert that two sequences hold the same base pairs.
+     *
+     * @param expected expected sequence
+     * @param actual actual sequence
+     */
+    private void assertSameSequence(final Sequence expected, final Sequence actual) {
+        assertEquals(expected.getLength(), actual.getLength());
+        for (int i = 0; i < expected.getLength(); i++) {
+            assertEquals(expected.get(i), actual.get(i));
+        }
+    }
+}
@@ -6,6 +6,7 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNull;
@@ -128,6 +129,25 @@ public class SequenceTest {
         assertEquals(BasePair.CG, pair);
     }
 
+    /**
+     * Test that a sequence of several pages encodes the same in parallel as on one thread.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testSequenceParallelPages() throws Exception {
+        int length = Sequence.PAGE_WORDS * Layout.size() * 3 + 5;
+        String os = this.generateOrderedString(length);
+        Sequence sequence = new Sequence(os);
+        Sequence parallel = new Sequence(os, Util.sharedPool());
+        assertEquals(sequence.wordCount(), parallel.wordCount());
+        for (int i = 0; i < sequence.wordCount(); i++) {
+            assertEquals(sequence.word(i), parallel.word(i));
+        }
+        List<BasePair> pairs = new ArrayList<>(BasePair.BASEPAIRSET);
+        assertEquals(pairs.get((length - 1) % pairs.size()), parallel.get(length - 1));
+    }
+
     /**
      * Test index out bounds exception.
      *
@@ -317,4 +337,21 @@ public class SequenceTest {
         }
         return sb.toString();
     }
+
+    /**
+     * Create a string of random base pairs. Shared by the tests of this package.
+     *
+     * @param random Source of base pairs.
+     * @param length Number of base pairs to encode.
+     * @return String representation of a sequence of base pairs.
+     */
+    static String generateRandomString(final Random random, final int length) {
+        StringBuilder sb = new StringBuilder();
+        List<BasePair> pairs = new ArrayList<>(BasePair.BASEPAIRSET);
+
+        for (int i = 0; i < length; i++) {
+            sb.append(pairs.get(random.nextInt(pairs.size())).getValue());
+        }
+        return sb.toString();
+    }
 }
\ No newline at end of file
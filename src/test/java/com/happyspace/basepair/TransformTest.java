@@ -0,0 +1,94 @@
+package com.happyspace.basepair;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static junit.framework.Assert.assertEquals;
+
+
+/**
+ * Test Transform class and PairMapping class.
+ */
+public class TransformTest {
+
+    /**
+     * Test reversal for every amount of padding in the last packed integer.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testReverse() throws Exception {
+        for (int length = 1; length <= 40; length++) {
+            Sequence sequence = new Sequence(generateString(length));
+            Sequence reversed = Transform.reverse(sequence);
+            assertEquals(length, reversed.getLength());
+            for (int i = 0; i < length; i++) {
+                assertEquals(sequence.get(length - 1 - i), reversed.get(i));
+            }
+        }
+    }
+
+    /**
+     * Test that the complement substitutes every base pair.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testComplement() throws Exception {
+        Sequence sequence = new Sequence("AAATACAGTTCCGGTCTGCG");
+        Sequence complement = Transform.substitute(sequence, PairMapping.COMPLEMENT);
+        BasePair[] expected = {BasePair.TT, BasePair.AT, BasePair.TG, BasePair.TC, BasePair.AA,
+            BasePair.GG, BasePair.CC, BasePair.AG, BasePair.AC, BasePair.CG};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], complement.get(i));
+        }
+    }
+
+    /**
+     * Test that reverse substitution matches substitution followed by reversal.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testReverseSubstitute() throws Exception {
+        Map<BasePair, BasePair> substitutions = new EnumMap<>(BasePair.class);
+        substitutions.put(BasePair.AA, BasePair.CG);
+        PairMapping mapping = new PairMapping(substitutions);
+
+        Sequence sequence = new Sequence(generateString(1001));
+        Sequence expected = Transform.reverse(Transform.substitute(sequence, mapping));
+        Sequence actual = Transform.reverseSubstitute(sequence, mapping);
+        for (int i = 0; i < sequence.getLength(); i++) {
+            assertEquals(expected.get(i), actual.get(i));
+        }
+        assertEquals(BasePair.CG, actual.get(sequence.getLength() - 1));
+    }
+
+    /**
+     * Test reversing the fields of a packed integer.
+     *
+     * @throws Exception Junit
+     */
+    @Test
+    public final void testReverseFields() throws Exception {
+        assertEquals(0x87654321, Transform.reverseFields(0x12345678));
+    }
+
+    /**
+     * Create a string cycling through the base pairs.
+     *
+     * @param length Number of base pairs to encode.
+     * @return String representation of a sequence of base pairs.
+     */
+    private String generateString(final int length) {
+        StringBuilder sb = new StringBuilder();
+        ArrayList<BasePair> pairs = new ArrayList<>(BasePair.BASEPAIRSET);
+        for (int i = 0; i < length; i++) {
+            sb.append(pairs.get((i * 7) % pairs.size()).getValue());
+        }
+        return sb.toString();
+    }
+}